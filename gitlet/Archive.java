@@ -0,0 +1,232 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static gitlet.Utils.*;
+
+/** Writes the files of a commit as a tar or zip archive. Blobs are read
+ *  straight from the object store in file name order and written to the
+ *  archive as they are decoded, so no working files are made. Decoding is
+ *  done ahead of writing by Checkout's pool of threads, and the bytes of
+ *  the blobs decoded but not yet written are bounded by Checkout's budget,
+ *  so memory use does not grow with the size of the commit. Every entry
+ *  has the commit's time as its modification time.
+ *  @author Jack Mango */
+abstract class Archive {
+
+    /** Writes the files of COMMIT to OUT as an archive in FORMAT, "tar" or
+     *  "zip", without closing OUT. */
+    static void write(Commit commit, String format, OutputStream out)
+        throws IOException {
+        Archive archive;
+        switch (format) {
+        case "tar":
+            archive = new Tar(out);
+            break;
+        case "zip":
+            archive = new Zip(out);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown format " + format);
+        }
+        archive.writeAll(commit.tree(), commit.getTime());
+        archive.finish();
+    }
+
+    /** Writes each blob in BLOBS, a map from file names to blob IDs, as an
+     *  entry modified at TIME, in milliseconds, in the order of BLOBS. */
+    private void writeAll(Map<String, ObjectId> blobs, long time)
+        throws IOException {
+        boolean parallel = blobs.size() >= Checkout.PARALLEL_MIN;
+        Deque<CompletableFuture<byte[]>> decoded = new ArrayDeque<>();
+        Deque<String> names = new ArrayDeque<>();
+        Deque<Integer> costs = new ArrayDeque<>();
+        RepoContext context = RepoContext.current();
+        long inFlight = 0;
+        for (Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+            String blobId = entry.getValue().toString();
+            File file = blobFile(blobId);
+            if (!file.exists() && !Pack.fault(file)) {
+                throw error("Missing blob %s.", blobId);
+            }
+            int cost = (int) Math.min(file.length(), Checkout.BUDGET);
+            while (!decoded.isEmpty() && inFlight + cost > Checkout.BUDGET) {
+                entry(names.poll(), join(decoded.poll()), time);
+                inFlight -= costs.poll();
+            }
+            decoded.add(parallel
+                    ? CompletableFuture.supplyAsync(
+                            () -> context.call(() -> contents(blobId)),
+                            Checkout.pool())
+                    : CompletableFuture.completedFuture(contents(blobId)));
+            names.add(entry.getKey());
+            costs.add(cost);
+            inFlight += cost;
+        }
+        while (!decoded.isEmpty()) {
+            entry(names.poll(), join(decoded.poll()), time);
+        }
+    }
+
+    /** Returns the contents of the blob BLOBID. */
+    private static byte[] contents(String blobId) {
+        return getBlob(blobId).getContents().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Returns the result of DECODED, once it is done. */
+    private static byte[] join(CompletableFuture<byte[]> decoded) {
+        try {
+            return decoded.join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw excp;
+        }
+    }
+
+    /** Writes an entry for the file NAME holding CONTENTS and modified at
+     *  TIME, in milliseconds. */
+    abstract void entry(String name, byte[] contents, long time)
+        throws IOException;
+
+    /** Writes whatever ends the archive. */
+    abstract void finish() throws IOException;
+
+    /** An archive in the POSIX tar format. */
+    private static class Tar extends Archive {
+
+        /** A tar archive written to OUT. */
+        Tar(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        void entry(String name, byte[] contents, long time)
+            throws IOException {
+            byte[] path = name.getBytes(StandardCharsets.UTF_8);
+            if (path.length > NAME_LENGTH) {
+                String record = " path=" + name + "\n";
+                int length = record.getBytes(StandardCharsets.UTF_8).length;
+                int total = length;
+                while (total != length + Integer.toString(total).length()) {
+                    total = length + Integer.toString(total).length();
+                }
+                byte[] pax = (total + record)
+                    .getBytes(StandardCharsets.UTF_8);
+                header("PaxHeader".getBytes(StandardCharsets.US_ASCII),
+                        pax.length, time, 'x');
+                body(pax);
+            }
+            header(path, contents.length, time, '0');
+            body(contents);
+        }
+
+        @Override
+        void finish() throws IOException {
+            _out.write(new byte[2 * BLOCK]);
+        }
+
+        /** Writes the header of an entry of type TYPE for the file NAME of
+         *  SIZE bytes modified at TIME, in milliseconds. Only the first
+         *  NAME_LENGTH bytes of NAME are kept. */
+        private void header(byte[] name, long size, long time, char type)
+            throws IOException {
+            byte[] header = new byte[BLOCK];
+            put(header, 0, name, NAME_LENGTH);
+            octal(header, 100, 8, 0644);
+            octal(header, 108, 8, 0);
+            octal(header, 116, 8, 0);
+            octal(header, 124, 12, size);
+            octal(header, 136, 12, Math.max(0, time / 1000));
+            header[156] = (byte) type;
+            put(header, 257, "ustar\0".getBytes(StandardCharsets.US_ASCII),
+                    6);
+            put(header, 263, "00".getBytes(StandardCharsets.US_ASCII), 2);
+            for (int i = 148; i < 156; i += 1) {
+                header[i] = ' ';
+            }
+            long sum = 0;
+            for (byte b : header) {
+                sum += b & 0xff;
+            }
+            octal(header, 148, 7, sum);
+            _out.write(header);
+        }
+
+        /** Writes CONTENTS, padded to a whole number of blocks. */
+        private void body(byte[] contents) throws IOException {
+            _out.write(contents);
+            int pad = (BLOCK - contents.length % BLOCK) % BLOCK;
+            _out.write(new byte[pad]);
+        }
+
+        /** Copies at most LENGTH bytes of VALUE into HEADER at START. */
+        private static void put(byte[] header, int start, byte[] value,
+                                int length) {
+            System.arraycopy(value, 0, header, start,
+                    Math.min(length, value.length));
+        }
+
+        /** Writes VALUE into the field of HEADER at START that is LENGTH
+         *  bytes long, as octal digits followed by a NUL. */
+        private static void octal(byte[] header, int start, int length,
+                                  long value) {
+            String digits = Long.toOctalString(value);
+            while (digits.length() < length - 1) {
+                digits = "0" + digits;
+            }
+            put(header, start, digits.getBytes(StandardCharsets.US_ASCII),
+                    length - 1);
+            header[start + length - 1] = 0;
+        }
+
+        /** The length of a block of the archive. */
+        private static final int BLOCK = 512;
+
+        /** The longest name that fits in a header; longer names are given
+         *  in an extended header first. */
+        private static final int NAME_LENGTH = 100;
+
+        /** Where the archive is written. */
+        private final OutputStream _out;
+    }
+
+    /** An archive in the zip format. */
+    private static class Zip extends Archive {
+
+        /** A zip archive written to OUT. */
+        Zip(OutputStream out) {
+            _out = new ZipOutputStream(out, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        void entry(String name, byte[] contents, long time)
+            throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            entry.setTime(time);
+            _out.putNextEntry(entry);
+            _out.write(contents);
+            _out.closeEntry();
+        }
+
+        @Override
+        void finish() throws IOException {
+            _out.finish();
+        }
+
+        /** Where the archive is written. */
+        private final ZipOutputStream _out;
+    }
+
+}
@@ -0,0 +1,235 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** The state of a search for the commit that introduced a bug: the
+ *  commit checked out for testing, and the commits marked bad, good or
+ *  skipped. The candidates are the commits reachable from the bad commit
+ *  but from no good one, found with the reachability bitmaps. Each step
+ *  picks the candidate whose ancestors among the candidates come closest
+ *  to half of them, counting through both parents of merges, so that
+ *  either answer rules out about half. The state is kept in
+ *  .gitlet/Objects/bisect as one "KIND ID" line per fact.
+ *  @author Jack Mango */
+class Bisect {
+
+    /** Starts a search with the head commit HEAD checked out. */
+    static void start(String head) {
+        if (join(BISECT).exists()) {
+            throw error("Already bisecting; use bisect reset first.");
+        }
+        Bisect bisect = new Bisect(head);
+        bisect.save();
+    }
+
+    /** Returns the search in progress. */
+    static Bisect load() {
+        File file = join(BISECT);
+        if (!file.exists()) {
+            throw error("Not bisecting.");
+        }
+        String at = null;
+        List<String[]> marks = new ArrayList<>();
+        for (String line : readContentsAsString(file).split("\n")) {
+            String[] fields = line.split(" ");
+            if (fields[0].equals("at")) {
+                at = fields[1];
+            } else {
+                marks.add(fields);
+            }
+        }
+        Bisect result = new Bisect(at);
+        for (String[] mark : marks) {
+            result.mark(mark[0], mark[1]);
+        }
+        return result;
+    }
+
+    /** Ends the search in progress. */
+    static void clear() {
+        join(BISECT).delete();
+    }
+
+    /** A search that has AT checked out. */
+    private Bisect(String at) {
+        _at = at;
+    }
+
+    /** Returns the commit checked out for testing. */
+    String at() {
+        return _at;
+    }
+
+    /** Records that the commit checked out for testing is now ID. */
+    void moveTo(String id) {
+        _at = id;
+    }
+
+    /** Marks the commit ID as KIND, which is "bad", "good" or "skip". A
+     *  new bad commit replaces the old one. */
+    void mark(String kind, String id) {
+        switch (kind) {
+        case "bad":
+            _bad = id;
+            break;
+        case "good":
+            _good.add(id);
+            break;
+        case "skip":
+            _skipped.add(id);
+            break;
+        default:
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Returns true if both a bad and a good commit have been marked. */
+    boolean ready() {
+        return _bad != null && !_good.isEmpty();
+    }
+
+    /** Returns the candidate to test next, printing how many candidates
+     *  will be left after it. Returns null, having printed the first bad
+     *  commit, if it has been found. */
+    String next() {
+        Bitmaps bitmaps = Bitmaps.load();
+        CommitGraph graph = bitmaps.graph();
+        BitSet candidates = (BitSet) bitmaps.reachable(_bad).clone();
+        for (String good : _good) {
+            candidates.andNot(bitmaps.reachable(good));
+        }
+        if (!candidates.get(graph.get(_bad).position())) {
+            throw error("A good commit is a descendant of the bad commit.");
+        }
+        int[] positions = candidates.stream().toArray();
+        int n = positions.length;
+        BitSet[] ancestors = new BitSet[n];
+        for (int i : parentsFirst(graph, positions)) {
+            ancestors[i] = new BitSet(n);
+            ancestors[i].set(i);
+            for (int j : parents(graph, positions, i)) {
+                ancestors[i].or(ancestors[j]);
+            }
+        }
+        int best = -1, bestWeight = 0, badPos = graph.get(_bad).position();
+        for (int i = 0; i < n; i += 1) {
+            CommitGraph.Entry entry = graph.at(positions[i]);
+            int weight = ancestors[i].cardinality();
+            if (positions[i] != badPos
+                    && !_skipped.contains(entry.getID().toString())
+                    && (best < 0 || Math.abs(2 * weight - n)
+                        < Math.abs(2 * bestWeight - n))) {
+                best = i;
+                bestWeight = weight;
+            }
+        }
+        if (best < 0) {
+            if (n > 1) {
+                throw error("There are only skipped commits left to test.");
+            }
+            System.out.printf("%s is the first bad commit%n", _bad);
+            System.out.println(getCommit(_bad));
+            return null;
+        }
+        String result = graph.at(positions[best]).getID().toString();
+        System.out.printf("Bisecting: %d revisions left to test after "
+                + "this.%n", Math.max(bestWeight - 1, n - bestWeight - 1));
+        System.out.printf("[%s] %s%n", result,
+                getCommit(result).getMessage());
+        return result;
+    }
+
+    /** Returns the indices in POSITIONS, the ascending positions in GRAPH
+     *  of the candidates, in an order in which each candidate comes after
+     *  those of its parents. Ascending positions are usually such an order
+     *  already, but not where an ancestor was recorded after a descendant
+     *  found before it. */
+    private static List<Integer> parentsFirst(CommitGraph graph,
+                                              int[] positions) {
+        List<Integer> result = new ArrayList<>();
+        boolean[] visited = new boolean[positions.length];
+        boolean[] done = new boolean[positions.length];
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int start = 0; start < positions.length; start += 1) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                int i = stack.peek();
+                if (!visited[i]) {
+                    visited[i] = true;
+                    for (int j : parents(graph, positions, i)) {
+                        if (!visited[j]) {
+                            stack.push(j);
+                        }
+                    }
+                } else {
+                    stack.pop();
+                    if (!done[i]) {
+                        done[i] = true;
+                        result.add(i);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the indices in POSITIONS, the ascending positions in GRAPH
+     *  of the candidates, of the parents of candidate I that are
+     *  candidates too. */
+    private static List<Integer> parents(CommitGraph graph, int[] positions,
+                                         int i) {
+        List<Integer> result = new ArrayList<>();
+        for (ObjectId parent : graph.at(positions[i]).parents()) {
+            CommitGraph.Entry entry = graph.get(parent);
+            int j = entry == null ? -1
+                : Arrays.binarySearch(positions, entry.position());
+            if (j >= 0) {
+                result.add(j);
+            }
+        }
+        return result;
+    }
+
+    /** Stores this search. */
+    void save() {
+        List<String> lines = new ArrayList<>();
+        lines.add("at " + _at);
+        if (_bad != null) {
+            lines.add("bad " + _bad);
+        }
+        for (String good : _good) {
+            lines.add("good " + good);
+        }
+        for (String skipped : _skipped) {
+            lines.add("skip " + skipped);
+        }
+        try (LockFile lock = LockFile.acquire(join(BISECT))) {
+            lock.commit(String.join("\n", lines) + "\n");
+        }
+    }
+
+    /** The path to the state of the search. */
+    static final String BISECT = ".gitlet/Objects/bisect";
+
+    /** The commit checked out for testing. */
+    private String _at;
+
+    /** The commit marked bad, or null if none has been. */
+    private String _bad;
+
+    /** The commits marked good. */
+    private final Set<String> _good = new LinkedHashSet<>();
+
+    /** The commits marked as impossible to test. */
+    private final Set<String> _skipped = new LinkedHashSet<>();
+
+}
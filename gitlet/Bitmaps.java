@@ -0,0 +1,243 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** Reachability bitmaps over the commit graph. Bit i of a commit's bitmap
+ *  is set if the commit at position i of the commit graph is the commit
+ *  itself or one of its ancestors, so ancestry questions become bit tests
+ *  and set differences. Bitmaps are stored, run-length compressed, for the
+ *  commits they were asked about (typically branch heads); the bitmap of
+ *  any other commit is computed by walking back only as far as commits
+ *  with stored bitmaps. Positions are those of the stored commit graph,
+ *  which is reread before records are added to it, so that bitmaps stored
+ *  by processes that extended the graph at the same time agree.
+ *  @author Jack Mango */
+class Bitmaps {
+
+    /** Returns the stored bitmaps and the commit graph they index. A
+     *  stored bitmap is ignored unless its commit is still at the position
+     *  it had when the bitmap was computed, so that bitmaps computed
+     *  against a commit graph that has since been rebuilt are not used. */
+    static Bitmaps load() {
+        Bitmaps result = new Bitmaps(CommitGraph.load());
+        File file = join(BITMAPS);
+        if (file.exists()) {
+            ByteBuffer buf = mapContents(file);
+            while (buf.remaining() > 0) {
+                byte[] raw = new byte[UID_BYTES];
+                buf.get(raw);
+                ObjectId id = ObjectId.fromBytes(raw);
+                int pos = buf.getInt();
+                long[] words = new long[buf.getInt()];
+                for (int i = 0; i < words.length; i += 1) {
+                    words[i] = buf.getLong();
+                }
+                CommitGraph.Entry entry = result._graph.get(id);
+                if (entry != null && entry.position() == pos) {
+                    result._stored.put(id, words);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Bitmaps over GRAPH. */
+    private Bitmaps(CommitGraph graph) {
+        _graph = graph;
+    }
+
+    /** Returns the commit graph these bitmaps index. */
+    CommitGraph graph() {
+        return _graph;
+    }
+
+    /** Returns the set of positions of COMMITID and all its ancestors. The
+     *  result is stored if it was not already. An ancestor found without a
+     *  record, as in a graph written before every commit recorded its
+     *  ancestors first, is recorded on the way rather than left out. */
+    BitSet reachable(String commitId) {
+        return reachable(ObjectId.parse(commitId));
+    }
+
+    /** Returns the set of positions of COMMITID and all its ancestors, as
+     *  for reachable(String). */
+    private BitSet reachable(ObjectId commitId) {
+        BitSet result = cached(commitId);
+        if (result != null) {
+            return result;
+        }
+        _graph.ensure(commitId.toString());
+        result = new BitSet(_graph.size());
+        Deque<ObjectId> stack = new ArrayDeque<>();
+        stack.push(commitId);
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.pop();
+            CommitGraph.Entry entry = _graph.get(id);
+            if (entry == null && hasCommit(id.toString())) {
+                _graph.ensure(id.toString());
+                entry = _graph.get(id);
+            }
+            if (entry == null || result.get(entry.position())) {
+                continue;
+            }
+            BitSet known = id.equals(commitId) ? null : cached(id);
+            if (known != null) {
+                result.or(known);
+            } else {
+                result.set(entry.position());
+                for (ObjectId parent : entry.parents()) {
+                    stack.push(parent);
+                }
+            }
+        }
+        _decoded.put(commitId, result);
+        long[] words = encode(result.toLongArray());
+        _stored.put(commitId, words);
+        append(commitId, _graph.get(commitId).position(), words);
+        return result;
+    }
+
+    /** Returns true if ANCESTOR is DESCENDANT or one of its ancestors. */
+    boolean isAncestor(String ancestor, String descendant) {
+        BitSet reach = reachable(descendant);
+        CommitGraph.Entry entry = _graph.get(ancestor);
+        if (entry == null && hasCommit(ancestor)) {
+            _graph.ensure(ancestor);
+            entry = _graph.get(ancestor);
+        }
+        return entry != null && reach.get(entry.position());
+    }
+
+    /** Returns the IDs of the commits reachable from WANT but not from
+     *  HAVE, parents before children. */
+    List<String> missing(String want, String have) {
+        BitSet result = (BitSet) reachable(want).clone();
+        result.andNot(reachable(have));
+        List<String> ids = new ArrayList<>();
+        for (int i = result.nextSetBit(0); i >= 0;
+             i = result.nextSetBit(i + 1)) {
+            ids.add(_graph.at(i).getID().toString());
+        }
+        return ids;
+    }
+
+    /** Returns the bitmap of COMMITID if it has been stored or computed,
+     *  and otherwise null. */
+    private BitSet cached(ObjectId commitId) {
+        BitSet result = _decoded.get(commitId);
+        if (result == null && _stored.containsKey(commitId)) {
+            result = BitSet.valueOf(decode(_stored.get(commitId)));
+            _decoded.put(commitId, result);
+        }
+        return result;
+    }
+
+    /** Returns WORDS compressed as a sequence of runs, each a marker word
+     *  followed by literal words. A marker holds, from the top bit down, the
+     *  value of a run of identical all-zero or all-one words, the length of
+     *  that run (31 bits) and the number of literal words that follow it
+     *  (32 bits). */
+    static long[] encode(long[] words) {
+        List<Long> out = new ArrayList<>();
+        int i = 0;
+        while (i < words.length) {
+            long clean = words[i] == -1L ? -1L : 0L;
+            int run = 0;
+            while (i < words.length && words[i] == clean
+                   && (words[i] == 0L || words[i] == -1L) && run < MAX_RUN) {
+                run += 1;
+                i += 1;
+            }
+            int start = i;
+            while (i < words.length && words[i] != 0L && words[i] != -1L) {
+                i += 1;
+            }
+            out.add((clean & Long.MIN_VALUE) | ((long) run << 32)
+                    | (i - start));
+            for (int k = start; k < i; k += 1) {
+                out.add(words[k]);
+            }
+        }
+        long[] result = new long[out.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = out.get(k);
+        }
+        return result;
+    }
+
+    /** Returns the words compressed by encode into CODE. */
+    static long[] decode(long[] code) {
+        List<Long> out = new ArrayList<>();
+        int i = 0;
+        while (i < code.length) {
+            long marker = code[i];
+            i += 1;
+            long clean = marker < 0 ? -1L : 0L;
+            int run = (int) ((marker >>> 32) & MAX_RUN);
+            int literals = (int) marker;
+            for (int k = 0; k < run; k += 1) {
+                out.add(clean);
+            }
+            for (int k = 0; k < literals; k += 1) {
+                out.add(code[i]);
+                i += 1;
+            }
+        }
+        long[] result = new long[out.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = out.get(k);
+        }
+        return result;
+    }
+
+    /** Appends the compressed bitmap WORDS of COMMITID, which is at
+     *  position POS in the commit graph, to the stored bitmaps. */
+    private static void append(ObjectId commitId, int pos, long[] words) {
+        ByteBuffer record = ByteBuffer.allocate(UID_BYTES + 2 * Integer.BYTES
+                + Long.BYTES * words.length);
+        commitId.write(record);
+        record.putInt(pos).putInt(words.length);
+        for (long word : words) {
+            record.putLong(word);
+        }
+        File file = join(BITMAPS);
+        try (LockFile lock = LockFile.acquire(file)) {
+            Files.write(file.toPath(), record.array(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Could not write bitmaps.");
+        }
+    }
+
+    /** The length of an ID in bytes. */
+    private static final int UID_BYTES = 20;
+
+    /** The path to the stored bitmaps. */
+    static final String BITMAPS = ".gitlet/Objects/bitmaps";
+
+    /** The longest run a single marker word can describe. */
+    private static final int MAX_RUN = 0x7fffffff;
+
+    /** The commit graph whose positions the bitmaps refer to. */
+    private final CommitGraph _graph;
+
+    /** Compressed bitmaps read from or written to disk, by commit ID. */
+    private final Map<ObjectId, long[]> _stored = new HashMap<>();
+
+    /** Bitmaps decoded or computed so far, by commit ID. */
+    private final Map<ObjectId, BitSet> _decoded = new HashMap<>();
+
+}
@@ -0,0 +1,381 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static gitlet.Utils.*;
+
+/** Attributes each line of a file to the commit that introduced it. The
+ *  lines still unattributed are carried back through history as ranges,
+ *  newest commits first. A commit whose changed-path filter rules the
+ *  file out passes its ranges to its parent without being read, and a
+ *  commit is diffed against a parent only when their blob IDs for the file
+ *  differ, so blob contents are read only where the file changed. Lines
+ *  that match a parent's are passed to it; the rest were introduced by the
+ *  commit. Results are stored in .gitlet/Blame by commit and blob ID, and
+ *  a later walk that reaches a stored commit and blob uses them instead of
+ *  going further back.
+ *  @author Jack Mango */
+class Blame {
+
+    /** Returns the ID of the commit that introduced each line of the file
+     *  PATH as of commit HEAD, which must track it. */
+    static String[] origins(Commit head, String path) {
+        return new Blame(path).run(head);
+    }
+
+    /** A blame of the file PATH. */
+    private Blame(String path) {
+        _path = path;
+        _graph = CommitGraph.load();
+    }
+
+    /** Returns the origins of the lines of _path as of HEAD. */
+    private String[] run(Commit head) {
+        String blob = head.hashOf(_path);
+        String[] stored = stored(head.getID(), blob);
+        if (stored != null) {
+            return stored;
+        }
+        _graph.ensure(head.getID());
+        _result = new String[lines(blob).length];
+        Target start = target(head.getID(), blob);
+        start._ranges.add(new int[] {0, 0, _result.length});
+        while (!_queue.isEmpty()) {
+            Target next = _queue.poll();
+            _pending.remove(next._commit);
+            process(next);
+        }
+        store(head.getID(), blob, _result);
+        return _result;
+    }
+
+    /** Attributes the lines of TARGET's ranges or passes them to its
+     *  commit's parents. */
+    private void process(Target target) {
+        String[] stored = stored(target._commit, target._blob);
+        if (stored != null) {
+            for (int[] range : target._ranges) {
+                System.arraycopy(stored, range[0], _result, range[1],
+                        range[2]);
+            }
+            return;
+        }
+        CommitGraph.Entry entry = _graph.get(target._commit);
+        List<String> parents = new ArrayList<>();
+        for (ObjectId parent : entry.parents()) {
+            if (hasCommit(parent.toString())) {
+                parents.add(parent.toString());
+            }
+        }
+        List<int[]> ranges = target._ranges;
+        if (parents.size() == 1 && entry.parents().size() == 1
+                && !entry.mayChange(_path)) {
+            pass(parents.get(0), target._blob, ranges);
+            return;
+        }
+        Map<String, String> blobs = new LinkedHashMap<>();
+        for (String parent : parents) {
+            String blob = getCommit(parent).hashOf(_path);
+            if (target._blob.equals(blob)) {
+                pass(parent, blob, ranges);
+                return;
+            } else if (blob != null) {
+                blobs.put(parent, blob);
+            }
+        }
+        for (Map.Entry<String, String> parent : blobs.entrySet()) {
+            if (ranges.isEmpty()) {
+                break;
+            }
+            List<int[]> blocks = common(lines(parent.getValue()),
+                    lines(target._blob));
+            List<int[]> matched = new ArrayList<>();
+            ranges = split(ranges, blocks, matched);
+            pass(parent.getKey(), parent.getValue(), matched);
+        }
+        for (int[] range : ranges) {
+            for (int i = 0; i < range[2]; i += 1) {
+                _result[range[1] + i] = target._commit;
+            }
+        }
+    }
+
+    /** Divides RANGES of lines of a blob according to BLOCKS, the blocks
+     *  of lines it shares with a parent's blob. Adds the parts of RANGES
+     *  within BLOCKS, renumbered as lines of the parent's blob, to
+     *  MATCHED, and returns the rest. */
+    private static List<int[]> split(List<int[]> ranges, List<int[]> blocks,
+                                     List<int[]> matched) {
+        List<int[]> rest = new ArrayList<>();
+        for (int[] range : ranges) {
+            int start = range[0], end = range[0] + range[2];
+            for (int[] block : blocks) {
+                int lo = Math.max(start, block[1]),
+                    hi = Math.min(end, block[1] + block[2]);
+                if (block[1] >= end) {
+                    break;
+                } else if (lo >= hi) {
+                    continue;
+                }
+                if (start < lo) {
+                    rest.add(new int[] {start, range[1] + start - range[0],
+                        lo - start});
+                }
+                matched.add(new int[] {block[0] + lo - block[1],
+                    range[1] + lo - range[0], hi - lo});
+                start = hi;
+            }
+            if (start < end) {
+                rest.add(new int[] {start, range[1] + start - range[0],
+                    end - start});
+            }
+        }
+        return rest;
+    }
+
+    /** Adds RANGES, ranges of lines of the blob BLOB, to those waiting to
+     *  be attributed at commit COMMIT. */
+    private void pass(String commit, String blob, List<int[]> ranges) {
+        if (!ranges.isEmpty()) {
+            target(commit, blob)._ranges.addAll(ranges);
+        }
+    }
+
+    /** Returns the ranges waiting at COMMIT, whose blob of _path is BLOB,
+     *  queuing it if it was not already queued. */
+    private Target target(String commit, String blob) {
+        Target result = _pending.get(commit);
+        if (result == null) {
+            result = new Target(commit, blob,
+                    _graph.get(commit).position());
+            _pending.put(commit, result);
+            _queue.add(result);
+        }
+        return result;
+    }
+
+    /** Returns the lines of the blob BLOBID, each as a number that is the
+     *  same for equal lines. */
+    private int[] lines(String blobId) {
+        int[] result = _lines.get(blobId);
+        if (result == null) {
+            String contents = getBlob(blobId).getContents();
+            String[] text = contents.isEmpty() ? new String[0]
+                : contents.split("\n", -1);
+            int n = contents.endsWith("\n") ? text.length - 1 : text.length;
+            result = new int[n];
+            for (int i = 0; i < n; i += 1) {
+                Integer token = _tokens.get(text[i]);
+                if (token == null) {
+                    token = _tokens.size();
+                    _tokens.put(text[i], token);
+                }
+                result[i] = token;
+            }
+            _lines.put(blobId, result);
+        }
+        return result;
+    }
+
+    /** Returns the blocks of lines common to A and B, in order, as triples
+     *  of a start in A, a start in B and a length. Lines are matched by
+     *  Myers's algorithm after any common prefix and suffix are set aside;
+     *  if A and B differ in more than MAX_EDITS lines beyond those, only the
+     *  prefix and suffix are matched. */
+    private static List<int[]> common(int[] a, int[] b) {
+        int pre = 0, suf = 0;
+        while (pre < a.length && pre < b.length && a[pre] == b[pre]) {
+            pre += 1;
+        }
+        while (suf < a.length - pre && suf < b.length - pre
+               && a[a.length - 1 - suf] == b[b.length - 1 - suf]) {
+            suf += 1;
+        }
+        List<int[]> result = new ArrayList<>();
+        if (pre > 0) {
+            result.add(new int[] {0, 0, pre});
+        }
+        myers(a, pre, a.length - suf, b, pre, b.length - suf, result);
+        if (suf > 0) {
+            result.add(new int[] {a.length - suf, b.length - suf, suf});
+        }
+        return result;
+    }
+
+    /** Adds to RESULT the blocks of lines common to A[ALO..AHI) and
+     *  B[BLO..BHI), found by Myers's algorithm, unless they differ in more
+     *  than MAX_EDITS lines. */
+    private static void myers(int[] a, int alo, int ahi, int[] b, int blo,
+                              int bhi, List<int[]> result) {
+        int n = ahi - alo, m = bhi - blo;
+        if (n == 0 || m == 0) {
+            return;
+        }
+        int max = Math.min(n + m, MAX_EDITS);
+        int[] v = new int[2 * max + 3];
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d += 1) {
+            int[] saved = new int[2 * d + 1];
+            System.arraycopy(v, max + 1 - d, saved, 0, 2 * d + 1);
+            trace.add(saved);
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[max + k] < v[max + k + 2])
+                    ? v[max + k + 2] : v[max + k] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[alo + x] == b[blo + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[max + 1 + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, n, m, alo, blo, result);
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Adds to RESULT, in order, the blocks of common lines on the path
+     *  found by Myers's algorithm to (N, M), given the TRACE of its
+     *  frontiers. Lines are numbered from ALO and BLO. */
+    private static void backtrack(List<int[]> trace, int n, int m, int alo,
+                                  int blo, List<int[]> result) {
+        List<int[]> blocks = new ArrayList<>();
+        int x = n, y = m;
+        for (int d = trace.size() - 1; d >= 0; d -= 1) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK = k == -d || (k != d && v[k - 1 + d] < v[k + 1 + d])
+                ? k + 1 : k - 1;
+            int prevX = d == 0 ? 0 : v[prevK + d];
+            int prevY = d == 0 ? 0 : prevX - prevK;
+            int len = Math.min(x - prevX, y - prevY);
+            if (len > 0) {
+                blocks.add(new int[] {alo + x - len, blo + y - len, len});
+            }
+            x = prevX;
+            y = prevY;
+        }
+        for (int i = blocks.size() - 1; i >= 0; i -= 1) {
+            result.add(blocks.get(i));
+        }
+    }
+
+    /** Returns the stored origins of the lines of the blob BLOB as of
+     *  commit COMMIT, or null if none are stored. */
+    private static String[] stored(String commit, String blob) {
+        File file = join(BLAMEDIR, sha1(commit, blob));
+        if (!file.exists()) {
+            return null;
+        }
+        ByteBuffer buf = mapContents(file);
+        String[] ids = new String[buf.getInt()];
+        for (int i = 0; i < ids.length; i += 1) {
+            byte[] bytes = new byte[UID_LENGTH];
+            buf.get(bytes);
+            ids[i] = new String(bytes, StandardCharsets.US_ASCII);
+        }
+        String[] result = new String[buf.getInt()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = ids[buf.getInt()];
+        }
+        return result;
+    }
+
+    /** Stores ORIGINS as the origins of the lines of the blob BLOB as of
+     *  commit COMMIT: the distinct commit IDs, then one index into them per
+     *  line. */
+    private static void store(String commit, String blob, String[] origins) {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (String origin : origins) {
+            ids.putIfAbsent(origin, ids.size());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ids.size());
+            for (String id : ids.keySet()) {
+                out.write(id.getBytes(StandardCharsets.US_ASCII));
+            }
+            out.writeInt(origins.length);
+            for (String origin : origins) {
+                out.writeInt(ids.get(origin));
+            }
+        } catch (IOException excp) {
+            throw error("Could not write blame.");
+        }
+        File dir = join(BLAMEDIR);
+        dir.mkdir();
+        try (LockFile lock = LockFile.acquire(
+                 join(dir, sha1(commit, blob)))) {
+            lock.commit(bytes.toByteArray());
+        }
+    }
+
+    /** Ranges of lines of one commit's blob of the file that are waiting to
+     *  be attributed. */
+    private static class Target {
+
+        /** Ranges of lines of BLOB at COMMIT, at position POS in the commit
+         *  graph. */
+        Target(String commit, String blob, int pos) {
+            _commit = commit;
+            _blob = blob;
+            _pos = pos;
+        }
+
+        /** The commit. */
+        private final String _commit;
+
+        /** The ID of the commit's blob of the file. */
+        private final String _blob;
+
+        /** The commit's position in the commit graph. */
+        private final int _pos;
+
+        /** The ranges, as triples of a first line in _blob, the
+         *  corresponding line of the blamed file and a length. */
+        private final List<int[]> _ranges = new ArrayList<>();
+    }
+
+    /** The directory holding stored results. */
+    static final String BLAMEDIR = ".gitlet/Blame";
+
+    /** The most differing lines Myers's algorithm is run on. Its memory
+     *  use grows with the square of this. */
+    private static final int MAX_EDITS = 2048;
+
+    /** The path of the file being blamed. */
+    private final String _path;
+
+    /** The commit graph. */
+    private final CommitGraph _graph;
+
+    /** The origin of each line of the file, as far as is known. */
+    private String[] _result;
+
+    /** Targets not yet processed, latest in the commit graph first, so
+     *  that a commit is normally processed only after its children. */
+    private final PriorityQueue<Target> _queue =
+        new PriorityQueue<>((t1, t2) -> Integer.compare(t2._pos, t1._pos));
+
+    /** Queued targets, by commit ID. */
+    private final Map<String, Target> _pending = new HashMap<>();
+
+    /** The lines of blobs read so far, by blob ID. */
+    private final Map<String, int[]> _lines = new HashMap<>();
+
+    /** The number standing for each distinct line read so far. */
+    private final Map<String, Integer> _tokens = new HashMap<>();
+
+}
@@ -29,8 +29,8 @@ public class Blob implements Serializable {
      *  filename and CURRHASH and TARGHASH are different versions of the
      *  same file referenced by the current and target commits in a merge. */
     public Blob(String filename, String currHash, String targHash) {
-        this(filename, readObject(join(BLOBSDIR, currHash), Blob.class),
-                readObject(join(BLOBSDIR, targHash), Blob.class));
+        this(filename, getBlob(currHash),
+                getBlob(targHash));
     }
 
     /** Returns this blob's filename. */
@@ -43,9 +43,13 @@ public class Blob implements Serializable {
         return _contents;
     }
 
-    /** Returns this blob's SHA-1 hash ID. */
+    /** Returns this blob's SHA-1 hash ID, computing it the first time it
+     *  is needed. */
     public String getID() {
-        return sha1(_filename + _contents);
+        if (_id == null) {
+            _id = sha1(_filename, _contents);
+        }
+        return _id;
     }
 
     /** Changes _commited to true. */
@@ -58,6 +62,9 @@ public class Blob implements Serializable {
         return _commited;
     }
 
+    /** The version of the serialized form of blobs. */
+    private static final long serialVersionUID = -8183417619062942148L;
+
     /** Stores this blob's filename. */
     private String _filename;
 
@@ -68,4 +75,8 @@ public class Blob implements Serializable {
      * included in a commit or is just staged. */
     private boolean _commited;
 
+    /** This blob's ID, or null if it has not been computed since the blob
+     *  was made or read. */
+    private transient String _id;
+
 }
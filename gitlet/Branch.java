@@ -1,9 +1,19 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static gitlet.Utils.*;
 
@@ -14,7 +24,118 @@ public class Branch implements Serializable {
     /** Create a new branch with NAME and HEAD. */
     public Branch(String name, Commit head) {
         _name = name;
-        _head = head.getID();
+        _head = ObjectId.parse(head.getID());
+    }
+
+    /** A branch with NAME whose stored head is HEAD. */
+    private Branch(String name, ObjectId head) {
+        _name = name;
+        _head = head;
+        _base = head;
+    }
+
+    /** Returns the branch named NAME as it is currently stored. */
+    public static Branch read(String name) {
+        Branch result = readFrom(join(GITLETDIR), name);
+        if (result == null) {
+            throw error("A branch with that name does not exist.");
+        }
+        return result;
+    }
+
+    /** Returns the branch NAME of the repository whose .gitlet directory is
+     *  DIR, which may be another repository, or null if there is no such
+     *  branch. A loose branch takes precedence over a packed one. */
+    static Branch readFrom(File dir, String name) {
+        File file = join(dir, "Branches", name);
+        if (file.exists()) {
+            Branch branch = Utils.readObject(file, Branch.class);
+            branch._base = branch._head;
+            return branch;
+        }
+        String head = Refs.load(dir).get(Refs.HEADS + name);
+        return head == null ? null : new Branch(name, ObjectId.parse(head));
+    }
+
+    /** Returns true if a branch named NAME exists. */
+    public static boolean exists(String name) {
+        return join(BRANCHESDIR, name).exists()
+            || Refs.local().get(Refs.HEADS + name) != null;
+    }
+
+    /** Returns the names of all branches, loose or packed, in order.
+     *  Branches fetched from a remote are named REMOTE/BRANCH. */
+    public static List<String> names() {
+        TreeSet<String> result = new TreeSet<>(looseNames());
+        result.addAll(Refs.local().names(Refs.HEADS));
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the names of the branches stored loose, in order. */
+    static List<String> looseNames() {
+        Path dir = join(BRANCHESDIR).toPath();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(p -> dir.relativize(p).toString()
+                         .replace(File.separatorChar, '/'))
+                    .filter(n -> !n.startsWith(".") && !n.contains("/.")
+                            && !n.endsWith(".lock"))
+                    .sorted().collect(Collectors.toList());
+        } catch (IOException excp) {
+            throw error("Could not read branches.");
+        }
+    }
+
+    /** Deletes the branch named NAME and its log, waiting for any process
+     *  updating it to finish first. */
+    public static void delete(String name) {
+        File file = join(BRANCHESDIR, name);
+        try (LockFile lock = LockFile.acquire(file)) {
+            file.delete();
+            Refs.remove(Refs.HEADS + name);
+            Reflog.delete(name);
+        }
+    }
+
+    /** Deletes the loose branch NAME, which has been packed with head HEAD,
+     *  unless it has moved since. */
+    static void unloose(String name, String head) {
+        File file = join(BRANCHESDIR, name);
+        try (LockFile lock = LockFile.acquire(file)) {
+            if (file.exists() && Utils.readObject(file, Branch.class).getHead()
+                    .equals(head)) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Stores this branch and records the update in its log. The update is
+     *  a compare-and-swap: it fails, leaving the stored branch alone, if
+     *  another process has moved the branch since it was read, or has
+     *  created it since this branch was constructed. */
+    public void save() {
+        saveTo(join(GITLETDIR));
+    }
+
+    /** Stores this branch in the repository whose .gitlet directory is DIR,
+     *  which may be another repository, as for save(). The branch is
+     *  always stored loose. */
+    void saveTo(File dir) {
+        File file = join(dir, "Branches", _name);
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (LockFile lock = LockFile.acquire(file)) {
+            Branch stored = readFrom(dir, _name);
+            ObjectId current = stored == null ? null : stored._head;
+            if (current != null && _base == null) {
+                throw error("A branch with that name already exists.");
+            } else if (current != null && !current.equals(_base)) {
+                throw error("Branch %s was updated by another process;"
+                        + " try again.", _name);
+            }
+            lock.commit(serialize(this));
+            Reflog.append(dir, _name, current, _head);
+        }
+        _base = _head;
     }
 
     /** Returns the name of this branch. */
@@ -24,12 +145,12 @@ public class Branch implements Serializable {
 
     /** Returns this branch's head commit. */
     public String getHead() {
-        return _head;
+        return _head.toString();
     }
 
     /** Sets the head of this branch to COMMITID. */
     public void setHead(String commitID) {
-        _head = commitID;
+        _head = ObjectId.parse(commitID);
     }
 
     /** Returns the latest common ancestor with the OTHER branch. */
@@ -39,65 +160,61 @@ public class Branch implements Serializable {
         Queue<String> remaining = new LinkedList<String>(); int distance = 0;
         masterTrav.put(getHead(), distance); remaining.add(getHead());
         while (!remaining.isEmpty()) {
-            Commit commit = readObject(join(commitFile(remaining.remove())),
-                    Commit.class);
+            Commit commit = getCommit(remaining.remove());
             distance = masterTrav.get(commit.getID()) + 1;
-            if (commit instanceof InitialCommit) {
-                continue;
-            } else if (commit instanceof MergeCommit) {
-                MergeCommit mergecom = (MergeCommit) commit;
-                if (!masterTrav.containsKey(mergecom.getFirst())
-                        || masterTrav.get(mergecom.getFirst()) > distance) {
-                    masterTrav.put(mergecom.getFirst(), distance);
-                    remaining.add(mergecom.getFirst());
-                }
-                if (!masterTrav.containsKey(mergecom.getSecond())
-                        || masterTrav.get(mergecom.getSecond()) > distance) {
-                    masterTrav.put(mergecom.getSecond(), distance);
-                    remaining.add(mergecom.getSecond());
-                }
-            } else {
-                if (!masterTrav.containsKey(commit.getParent().getID())
-                        || masterTrav.get(commit.getParent().getID())
-                        > distance) {
-                    masterTrav.put(commit.getParent().getID(), distance);
-                    remaining.add(commit.getParent().getID());
+            for (String parent : commit.parentIds()) {
+                if (!masterTrav.containsKey(parent)
+                        || masterTrav.get(parent) > distance) {
+                    masterTrav.put(parent, distance);
+                    remaining.add(parent);
                 }
             }
         }
         remaining.add(other.getHead());
         while (!remaining.isEmpty()) {
-            Commit commit = readObject(join(commitFile(remaining.remove())),
-                    Commit.class);
+            Commit commit = getCommit(remaining.remove());
             if (commit instanceof MergeCommit) {
-                MergeCommit mergecom = (MergeCommit) commit;
-                if (masterTrav.containsKey(mergecom.getFirst())) {
-                    targTrav.put(masterTrav.get(mergecom.getFirst()),
-                            mergecom.getFirst());
-                }
-                if (masterTrav.containsKey(mergecom.getSecond())) {
-                    targTrav.put(masterTrav.get((mergecom.getSecond())),
-                            (mergecom.getSecond()));
+                for (String parent : commit.parentIds()) {
+                    if (masterTrav.containsKey(parent)) {
+                        targTrav.put(masterTrav.get(parent), parent);
+                    }
+                    remaining.add(parent);
                 }
-                remaining.add(mergecom.getFirst());
-                remaining.add(mergecom.getSecond());
             } else {
                 if (masterTrav.containsKey(commit.getID())) {
                     targTrav.put(masterTrav.get(commit.getID()),
                             commit.getID());
                 }
-                if (commit.getParent() != null) {
-                    remaining.add(commit.getParent().getID());
-                }
+                remaining.addAll(commit.parentIds());
             }
         }
+        if (targTrav.isEmpty()) {
+            throw error("No common ancestor within the available history.");
+        }
         return targTrav.firstEntry().getValue();
     }
 
+    /** Reads this branch from IN. Branches written by older versions of
+     *  gitlet hold the ID of their head as a string. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _name = (String) fields.get("_name", null);
+        _head = ObjectId.of(fields.get("_head", null));
+    }
+
+    /** The version of the serialized form of branches, fixed at the one
+     *  that older versions of gitlet computed for it. */
+    private static final long serialVersionUID = 110481466858140661L;
+
     /** The name of this branch. */
     private String _name;
 
     /** Stores the commit Id corresponding to the head commit. */
-    private String _head;
+    private ObjectId _head;
+
+    /** The head this branch had when it was read, or null for a branch
+     *  that has not yet been stored. */
+    private transient ObjectId _base;
 
 }
@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static gitlet.Utils.*;
+
+/** Writes many blobs to the working directory at once. The calling thread
+ *  makes sure each blob is present loose and hands it to a pool of
+ *  threads, shared by every repository the process uses, that decode and
+ *  write it in the caller's RepoContext, so that reading, decoding and
+ *  writing overlap across files. The bytes of the blobs being processed are
+ *  bounded by a budget, so memory use does not grow with the size of the
+ *  checkout. The budget (in bytes) and the number of threads may be set
+ *  with the system properties gitlet.checkout.budget and
+ *  gitlet.checkout.threads.
+ *  @author Jack Mango */
+class Checkout {
+
+    /** Writes each blob in BLOBS, a map from file names to blob IDs, to its
+     *  file, returning when all have been written. */
+    static void writeAll(Map<String, String> blobs) {
+        if (blobs.size() < PARALLEL_MIN) {
+            for (Map.Entry<String, String> entry : blobs.entrySet()) {
+                Monitor.invalidate(entry.getKey());
+                write(entry.getValue());
+            }
+            return;
+        }
+        RepoContext context = RepoContext.current();
+        Semaphore budget = new Semaphore(BUDGET);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try {
+            for (Map.Entry<String, String> entry : blobs.entrySet()) {
+                if (failure.get() != null) {
+                    break;
+                }
+                String blobId = entry.getValue();
+                File file = blobFile(blobId);
+                if (!file.exists() && !Pack.fault(file)) {
+                    failure.set(error("Missing blob %s.", blobId));
+                    break;
+                }
+                int cost = (int) Math.min(file.length(), BUDGET);
+                budget.acquire(cost);
+                Monitor.invalidate(entry.getKey());
+                pool().execute(() -> {
+                    try {
+                        context.run(() -> write(blobId));
+                    } catch (RuntimeException excp) {
+                        failure.compareAndSet(null, excp);
+                    } finally {
+                        budget.release(cost);
+                    }
+                });
+            }
+            budget.acquire(BUDGET);
+        } catch (InterruptedException excp) {
+            throw error("Checkout interrupted.");
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /** Decodes the blob BLOBID and writes it to its file. A blob that
+     *  cannot be decoded is reported as corrupt. */
+    private static void write(String blobId) {
+        Blob blob;
+        try {
+            blob = getBlob(blobId);
+        } catch (IllegalArgumentException excp) {
+            throw error("Corrupt blob %s.", blobId);
+        }
+        File file = workFile(blob.getFilename());
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        writeContents(file, blob.getContents());
+    }
+
+    /** Returns the pool of writer threads, starting it the first time it is
+     *  needed. */
+    static synchronized ExecutorService pool() {
+        if (_pool == null) {
+            _pool = Executors.newFixedThreadPool(THREADS, r -> {
+                Thread thread = new Thread(r, "gitlet-checkout");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _pool;
+    }
+
+    /** The default limit on the bytes of blobs in flight. */
+    private static final int DEFAULT_BUDGET = 64 << 20;
+
+    /** The limit on the bytes of blobs in flight. */
+    static final int BUDGET = Math.max(1,
+        Integer.getInteger("gitlet.checkout.budget", DEFAULT_BUDGET));
+
+    /** The number of writer threads. Writing small files is bound by
+     *  latency rather than by processors, so there are more threads than
+     *  processors. */
+    private static final int THREADS = Math.max(1, Integer.getInteger(
+        "gitlet.checkout.threads",
+        Math.max(4, 2 * Runtime.getRuntime().availableProcessors())));
+
+    /** The fewest blobs worth handing to the pool. */
+    static final int PARALLEL_MIN = 8;
+
+    /** The writer threads, or null if not yet started. The pool is shared
+     *  by every context, and is stateless: its threads keep nothing between
+     *  tasks, and each task is wrapped to run in the context of the
+     *  checkout that submitted it. */
+    private static ExecutorService _pool;
+
+}
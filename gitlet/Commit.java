@@ -1,13 +1,20 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.Formatter;
 import java.util.Collection;
 import static gitlet.Utils.*;
 
@@ -22,19 +29,40 @@ public class Commit implements Serializable {
      *  and parent PARENT. Initially tracks the exact same blobs
      *  as the parent commit. */
     public Commit(String message, Commit parent) {
-        _timestamp = ZonedDateTime.now().format(FORMAT);
-        _message = message;
-        _parent = parent.getID();
-        _blobs = new TreeMap<String, String>();
-        _versions = new HashSet<String>();
+        this(message, ZonedDateTime.now());
+        _parent = ObjectId.parse(parent.getID());
+    }
+
+    /** Creates a new gitlet commit with MESSAGE and parent PARENT that
+     *  tracks the files in BLOBS, a map from file names to blob IDs. */
+    Commit(String message, Commit parent, Map<String, ObjectId> blobs) {
+        this(message, parent.getID(), ZonedDateTime.now(), blobs);
     }
 
-    /** Create a commit with MESSAGE and TIMESTAMP. Used for child classes. */
-    public Commit(String message, String timestamp) {
-        _timestamp = timestamp;
+    /** Creates a new gitlet commit with MESSAGE, made at TIME, whose parent
+     *  is the commit PARENTID and that tracks the files in BLOBS, a map
+     *  from file names to blob IDs. */
+    Commit(String message, String parentId, ZonedDateTime time,
+           Map<String, ObjectId> blobs) {
+        this(message, time, blobs);
+        _parent = ObjectId.parse(parentId);
+    }
+
+    /** Creates a commit with MESSAGE made at TIME that tracks the files in
+     *  BLOBS. Used for child classes. */
+    Commit(String message, ZonedDateTime time, Map<String, ObjectId> blobs) {
+        this(message, time);
+        _blobs.putAll(blobs);
+        _versions.addAll(blobs.values());
+    }
+
+    /** Create a commit with MESSAGE made at TIME. Used for child classes. */
+    public Commit(String message, ZonedDateTime time) {
+        _time = time.toInstant().toEpochMilli();
+        _offset = time.getOffset().getTotalSeconds();
         _message = message;
-        _blobs = new TreeMap<String, String>();
-        _versions = new HashSet<String>();
+        _blobs = new TreeMap<String, ObjectId>();
+        _versions = new HashSet<ObjectId>();
     }
 
     /** Returns this commit's message. */
@@ -42,27 +70,48 @@ public class Commit implements Serializable {
         return _message;
     }
 
-    /** Returns this commit's timestamp. */
+    /** Returns this commit's timestamp, formatted in the zone it was made
+     *  in. */
     public String getTimestamp() {
-        return _timestamp;
+        return Instant.ofEpochMilli(_time)
+            .atOffset(ZoneOffset.ofTotalSeconds(_offset)).format(FORMAT);
+    }
+
+    /** Returns the time this commit was made, in milliseconds since the
+     *  epoch. */
+    public long getTime() {
+        return _time;
+    }
+
+    /** Returns the offset from UTC of the zone this commit was made in, in
+     *  seconds. */
+    public int getOffset() {
+        return _offset;
     }
 
     /** Returns the hexadecimal ID string associated with this commit.
-     * Generates the ID by calling SHA-1 hash function on this commit's
-     * timestamp, blobIDs, and message. */
-    public String getID() {
-        Formatter f = new Formatter();
-        for (String blob : _blobs.values()) {
-            f.format(blob);
+     *  The ID is computed the first time it is needed and again only after
+     *  the files this commit tracks change. */
+    public final String getID() {
+        if (_id == null) {
+            _id = computeID();
         }
-        return Utils.sha1(f.toString(), _parent, _message, _timestamp);
+        return _id;
+    }
+
+    /** Returns the ID of this commit, generated by calling SHA-1 hash
+     *  function on this commit's blobIDs, parent, message and timestamp. */
+    protected String computeID() {
+        List<Object> vals = new ArrayList<Object>(_blobs.values());
+        Collections.addAll(vals, _parent, _message, getTimestamp());
+        return Utils.sha1(vals);
     }
 
     /** Returns true if this commit is tracking a file with HASH.
      *  If the _blobs field hasn't been initialized (initial commit),
      *  returns false. */
     public boolean trackingHash(String hash) {
-        return _versions.contains(hash);
+        return _versions.contains(ObjectId.parse(hash));
     }
 
     /** Returns true if this commit is tracking a file with name FILENAME.
@@ -72,6 +121,17 @@ public class Commit implements Serializable {
         return _blobs.containsKey(filename);
     }
 
+    /** Returns the names of all files tracked by this commit, in order. */
+    public Collection<String> filenames() {
+        return _blobs.keySet();
+    }
+
+    /** Returns the files tracked by this commit, as a read-only map from
+     *  file names to blob IDs. */
+    Map<String, ObjectId> tree() {
+        return Collections.unmodifiableMap(_blobs);
+    }
+
     /** Returns true if the file with the corresponding BLOB in the cwd
      *  is tracked by name in this commit however with a different version. */
     public boolean modified(Blob blob) {
@@ -79,9 +139,40 @@ public class Commit implements Serializable {
                 && !trackingHash(blob.getID());
     }
 
-    /** Returns this commmit's parent commit object. */
+    /** Returns this commmit's parent commit object, or null if this commit
+     *  is at the boundary of a shallow history and its parent has been
+     *  archived or discarded. */
     public Commit getParent() {
-        return readObject(commitFile(_parent), Commit.class);
+        return parentCommit(ObjectId.toString(_parent));
+    }
+
+    /** Returns the IDs of this commit's parents that are part of the
+     *  history of this repository, first parent first: at the boundary of a
+     *  shallow history, only those not archived beyond it. */
+    public List<String> parentIds() {
+        ArrayList<String> result = new ArrayList<>();
+        boolean boundary = Shallow.isBoundary(getID());
+        for (String id : declaredParentIds()) {
+            if (!boundary || Shallow.present(id)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the IDs of all of this commit's parents, first parent first,
+     *  whether or not they are present. */
+    public List<String> declaredParentIds() {
+        return Collections.singletonList(_parent.toString());
+    }
+
+    /** Returns the commit PARENTID, a parent of this commit, or null if it
+     *  lies beyond a shallow boundary and is archived or missing. */
+    protected Commit parentCommit(String parentId) {
+        if (Shallow.isBoundary(getID()) && !Shallow.present(parentId)) {
+            return null;
+        }
+        return getCommit(parentId);
     }
 
     /** Updates the blobs this commit is tracking. First iterates over each
@@ -90,75 +181,103 @@ public class Commit implements Serializable {
      *  present and not staged for removal. */
     public void updateTracking(StagingArea stg) {
         for (String filename : stg.additionDump()) {
-            _blobs.put(filename, stg.additionGetID(filename));
-            _versions.add(stg.additionGetID(filename));
+            ObjectId blobId = ObjectId.parse(stg.additionGetID(filename));
+            _blobs.put(filename, blobId);
+            _versions.add(blobId);
         }
         if (!(getParent() instanceof InitialCommit)) {
-            Collection<Map.Entry<String, String>> parentBlob =
+            Collection<Map.Entry<String, ObjectId>> parentBlob =
                     getParent()._blobs.entrySet();
-            for (Map.Entry<String, String> blob : parentBlob) {
+            for (Map.Entry<String, ObjectId> blob : parentBlob) {
                 if (!_blobs.containsKey(blob.getKey())
                         && !stg.removeContains(blob.getKey())) {
                     _blobs.put(blob.getKey(), blob.getValue());
                     _versions.add(blob.getValue());
-                    Blob addedBlob = readObject(join(BLOBSDIR,
-                                    blob.getValue()),
-                            Blob.class);
-                    addedBlob.commit();
-                    writeObject(join(BLOBSDIR, blob.getValue()), addedBlob);
+                    String blobId = blob.getValue().toString();
+                    Blob addedBlob = getBlob(blobId);
+                    if (!addedBlob.isCommited()) {
+                        addedBlob.commit();
+                        writeObject(join(BLOBSDIR, blobId), addedBlob);
+                    }
                 }
             }
         }
+        _id = null;
     }
 
     /** Adds the given BLOB to the files tracked by this commit. */
     public void add(Blob blob) {
-        _blobs.put(blob.getFilename(), blob.getID());
-        _versions.add(blob.getID());
+        ObjectId blobId = ObjectId.parse(blob.getID());
+        _id = null;
+        _blobs.put(blob.getFilename(), blobId);
+        _versions.add(blobId);
     }
 
     /** Returns the SHA-1 hash of the file with FILENAME tracked by this
      *  commit. */
     public String hashOf(String filename) {
+        return ObjectId.toString(_blobs.get(filename));
+    }
+
+    /** Returns the ID of the file with FILENAME tracked by this commit, or
+     *  null if it is not tracked. */
+    ObjectId idOf(String filename) {
         return _blobs.get(filename);
     }
 
     /** Writes a copy of the blob corresponding to HASH tracked by this
      *  commit in the working directory. */
     public void checkout(String hash) {
-        Blob blob = readObject(join(BLOBSDIR, hash), Blob.class);
-        writeContents(new File(blob.getFilename()), blob.getContents());
+        Blob blob = getBlob(hash);
+        File file = workFile(blob.getFilename());
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Monitor.invalidate(blob.getFilename());
+        writeContents(file, blob.getContents());
     }
 
-    /** Writes copies of all the blobs tracked by this commit to the working
-     *  directory. */
+    /** Writes copies of all the blobs tracked by this commit that are
+     *  selected by the sparse-checkout patterns to the working
+     *  directory, several at a time. */
     public void checkoutAll() {
-        for (String blobId : _blobs.values()) {
-            checkout(blobId);
+        Map<String, String> selected = new LinkedHashMap<String, String>();
+        for (Map.Entry<String, ObjectId> entry : _blobs.entrySet()) {
+            if (Sparse.selects(entry.getKey())) {
+                selected.put(entry.getKey(), entry.getValue().toString());
+            }
         }
+        Checkout.writeAll(selected);
     }
 
     /** Iterates over all filenames tracked by this commit checking for two
      *  conditions. If the file exists in the cwd and isn't tracked by LAST,
      *  we return true. If the file doesn't exist in the cwd but is tracked
-     *  by name in the LAST commit, return true. */
+     *  by name in the LAST commit, return true. Files outside the
+     *  sparse-checkout patterns are not written, so they are skipped. */
     public boolean inTheWay(Commit last) {
         for (String filename : _blobs.keySet()) {
-            File file = new File(filename);
+            if (!Sparse.selects(filename)) {
+                continue;
+            }
+            File file = workFile(filename);
             if (!file.exists() && last.tracking(filename)) {
                 return true;
-            } else if (file.exists() && !last.trackingHash(sha1(file))) {
+            } else if (file.exists()
+                    && !last.trackingHash(Monitor.hashOf(filename))) {
                 return true;
             }
         }
         return false;
     }
 
-    /** Remove all files tracked by this commit from the cwd. */
+    /** Remove all files tracked by this commit that are selected by the
+     *  sparse-checkout patterns from the cwd. */
     public void clearTracked() {
         for (String filename : _blobs.keySet()) {
-            File file = new File(filename);
-            restrictedDelete(file);
+            if (Sparse.selects(filename)) {
+                restrictedDelete(filename);
+            }
         }
     }
 
@@ -177,17 +296,64 @@ public class Commit implements Serializable {
 
     /** Returns an iterator over the hashes tracked by this class. */
     public Collection<String> hashes() {
-        return _versions;
+        ArrayList<String> result = new ArrayList<String>(_versions.size());
+        for (ObjectId blobId : _versions) {
+            result.add(blobId.toString());
+        }
+        return result;
     }
 
+    /** Reads this commit from IN. Commits written by older versions of
+     *  gitlet hold IDs as strings, may lack the files of an initial commit,
+     *  and hold the formatted _timestamp instead of _time and _offset; all
+     *  are converted. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _parent = ObjectId.of(fields.get("_parent", null));
+        _message = (String) fields.get("_message", null);
+        _blobs = new TreeMap<String, ObjectId>();
+        Map<?, ?> blobs = (Map<?, ?>) fields.get("_blobs", null);
+        if (blobs != null) {
+            for (Map.Entry<?, ?> entry : blobs.entrySet()) {
+                _blobs.put((String) entry.getKey(),
+                        ObjectId.of(entry.getValue()));
+            }
+        }
+        _versions = new HashSet<ObjectId>();
+        Collection<?> versions = (Collection<?>) fields.get("_versions", null);
+        if (versions != null) {
+            for (Object version : versions) {
+                _versions.add(ObjectId.of(version));
+            }
+        }
+        if (fields.getObjectStreamClass().getField("_timestamp") == null) {
+            _time = fields.get("_time", 0L);
+            _offset = fields.get("_offset", 0);
+        } else {
+            ZonedDateTime time = ZonedDateTime.parse(
+                    (String) fields.get("_timestamp", null), FORMAT);
+            _time = time.toInstant().toEpochMilli();
+            _offset = time.getOffset().getTotalSeconds();
+        }
+    }
+
+    /** The version of the serialized form of commits, fixed at the one
+     *  that older versions of gitlet computed for it. */
+    private static final long serialVersionUID = 7248524759895551079L;
+
     /** This commit's parents' IDs. */
-    private String _parent;
+    private ObjectId _parent;
 
     /** The message associated with this commit. */
     private String _message;
 
-    /** The timestamp associated with this commit. */
-    private String _timestamp;
+    /** The time this commit was made, in milliseconds since the epoch. */
+    private long _time;
+
+    /** The offset from UTC of the zone this commit was made in, in
+     *  seconds. */
+    private int _offset;
 
     /** Timestamp formatter used for commits. */
     private static final DateTimeFormatter FORMAT =
@@ -196,8 +362,12 @@ public class Commit implements Serializable {
     /** A map storing the names of the files this commit is tracking;
      *  keys are filenames hashes and values are
      * SHA-1 hashes. */
-    private TreeMap<String, String> _blobs;
+    private TreeMap<String, ObjectId> _blobs;
 
     /** Stores Ids of blobs stored by this commit. */
-    private HashSet<String> _versions;
+    private HashSet<ObjectId> _versions;
+
+    /** This commit's ID, or null if it has not been computed since the
+     *  commit was read or last changed. */
+    private transient String _id;
 }
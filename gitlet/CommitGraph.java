@@ -0,0 +1,413 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A compact, append-only summary of the commit history, so that walks over
+ *  the history need not deserialize commit objects. Each record holds a
+ *  commit's ID, its parents' IDs and a Bloom filter of the paths it changed
+ *  relative to its first parent. IDs are stored as their 20 raw bytes.
+ *  Records are appended as commits are made and filled in on demand for
+ *  commits that lack one.
+ *  @author Jack Mango */
+class CommitGraph {
+
+    /** One commit's record. */
+    static class Entry {
+
+        /** A record for commit ID with PARENTS and changed-path filter
+         *  BLOOM. */
+        Entry(ObjectId id, List<ObjectId> parents, long[] bloom) {
+            _id = id;
+            _parents = parents;
+            _bloom = bloom;
+        }
+
+        /** Returns the ID of this commit. */
+        ObjectId getID() {
+            return _id;
+        }
+
+        /** Returns the position of this record in the graph. Positions
+         *  never change once assigned, since the graph is only appended
+         *  to. */
+        int position() {
+            return _pos;
+        }
+
+        /** Returns the IDs of this commit's parents, first parent first. */
+        List<ObjectId> parents() {
+            return _parents;
+        }
+
+        /** Returns the first parent's ID, or null if there is none. */
+        ObjectId firstParent() {
+            return _parents.isEmpty() ? null : _parents.get(0);
+        }
+
+        /** Returns false if this commit certainly did not change PATH or
+         *  anything beneath it; true if it may have. The empty PATH is the
+         *  top directory, beneath which every file lies. */
+        boolean mayChange(String path) {
+            long bits = (long) _bloom.length * Long.SIZE;
+            if (bits == 0) {
+                return false;
+            } else if (path.isEmpty()) {
+                return true;
+            }
+            long h1 = hash1(path), h2 = hash2(path);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                if ((_bloom[(int) (bit / Long.SIZE)]
+                        & (1L << (bit % Long.SIZE))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** ID of this commit. */
+        private final ObjectId _id;
+
+        /** IDs of this commit's parents. */
+        private final List<ObjectId> _parents;
+
+        /** Bloom filter of the paths this commit changed. */
+        private final long[] _bloom;
+
+        /** Position of this record in the graph. */
+        private int _pos;
+    }
+
+    /** Returns the stored commit graph. */
+    static CommitGraph load() {
+        CommitGraph graph = new CommitGraph();
+        graph.readTail();
+        return graph;
+    }
+
+    /** Reads the records appended to the stored graph since it was last
+     *  read into this one. A last record that another process has not
+     *  finished appending is left for the next read. */
+    private void readTail() {
+        File file = join(GRAPH);
+        if (!file.exists() || file.length() <= _loadedSize) {
+            return;
+        }
+        ByteBuffer buf = mapContents(file);
+        buf.position((int) _loadedSize);
+        try {
+            while (buf.remaining() > 0) {
+                ObjectId id = readId(buf);
+                int nparents = buf.get();
+                List<ObjectId> parents = new ArrayList<>(nparents);
+                for (int i = 0; i < nparents; i += 1) {
+                    parents.add(readId(buf));
+                }
+                long[] bloom = new long[buf.getShort() & 0xffff];
+                for (int i = 0; i < bloom.length; i += 1) {
+                    bloom[i] = buf.getLong();
+                }
+                put(new Entry(id, parents, bloom));
+                _loadedSize = buf.position();
+            }
+        } catch (BufferUnderflowException excp) {
+            return;
+        }
+    }
+
+    /** Adds ENTRY at the next position, unless its commit already has a
+     *  record. Positions match those in the stored graph only if every
+     *  record stored before ENTRY has been read, which extend ensures. */
+    private void put(Entry entry) {
+        if (!_entries.containsKey(entry._id)) {
+            entry._pos = _byPosition.size();
+            _entries.put(entry._id, entry);
+            _byPosition.add(entry);
+        }
+    }
+
+    /** Returns the record at position POS. */
+    Entry at(int pos) {
+        return _byPosition.get(pos);
+    }
+
+    /** Returns the number of records. */
+    int size() {
+        return _byPosition.size();
+    }
+
+    /** Returns the record for COMMITID, or null if there is none. */
+    Entry get(ObjectId commitId) {
+        return _entries.get(commitId);
+    }
+
+    /** Returns the record for COMMITID, given in hexadecimal, or null if
+     *  there is none or COMMITID is null. */
+    Entry get(String commitId) {
+        return commitId == null ? null : get(ObjectId.parse(commitId));
+    }
+
+    /** Returns all records, in the order they were written. Unless records
+     *  were added out of order, parents precede their children. */
+    Collection<Entry> entries() {
+        return _entries.values();
+    }
+
+    /** Makes sure that HEAD and all of its available ancestors have
+     *  records, computing and appending any that are missing. */
+    void ensure(String head) {
+        LinkedHashMap<ObjectId, Entry> added = new LinkedHashMap<>();
+        Deque<ObjectId> stack = new ArrayDeque<>();
+        Set<ObjectId> expanded = new HashSet<>();
+        stack.push(ObjectId.parse(head));
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.peek();
+            if (_entries.containsKey(id) || added.containsKey(id)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = getCommit(id.toString());
+            if (expanded.add(id)) {
+                for (String parent : commit.parentIds()) {
+                    ObjectId parentId = ObjectId.parse(parent);
+                    if (!_entries.containsKey(parentId)) {
+                        stack.push(parentId);
+                    }
+                }
+                continue;
+            }
+            stack.pop();
+            added.put(id, entryFor(commit));
+        }
+        if (!added.isEmpty()) {
+            extend(added.values());
+        }
+    }
+
+    /** Adds ENTRIES, whose parents precede them, to this graph and to the
+     *  stored graph. Another process may have appended records since this
+     *  graph was read, so they are read first, with the stored graph
+     *  locked, and ENTRIES are given the positions that follow them; the
+     *  entries among them that now have records are not added again. */
+    private void extend(Collection<Entry> entries) {
+        File file = join(GRAPH);
+        try (LockFile lock = LockFile.acquire(file)) {
+            readTail();
+            List<Entry> fresh = new ArrayList<>();
+            for (Entry entry : entries) {
+                if (!_entries.containsKey(entry._id)) {
+                    put(entry);
+                    fresh.add(entry);
+                }
+            }
+            Files.write(file.toPath(), encode(fresh),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            _loadedSize = file.length();
+        } catch (IOException excp) {
+            throw error("Could not write the commit graph.");
+        }
+    }
+
+    /** Appends a record for the newly made COMMIT, which has been
+     *  written. Its ancestors that lack records, such as commits brought in
+     *  by fetch, are recorded first, so that every record follows those of
+     *  its parents and walks that stop at recorded commits miss nothing. */
+    static void record(Commit commit) {
+        load().ensure(commit.getID());
+    }
+
+    /** Appends the records ENTRIES, made by entryFor for commits whose
+     *  parents precede them or already have records, without reading the
+     *  rest of the graph. */
+    static void record(List<Entry> entries) {
+        append(entries);
+    }
+
+    /** Returns a record for COMMIT. */
+    private static Entry entryFor(Commit commit) {
+        List<String> parents = commit.parentIds();
+        Commit first = parents.isEmpty() ? null : getCommit(parents.get(0));
+        return entryFor(commit, parents, first);
+    }
+
+    /** Returns a record for COMMIT, whose parents are PARENTS and whose
+     *  first parent is FIRST, or null if it has none. */
+    static Entry entryFor(Commit commit, List<String> parents,
+                          Commit first) {
+        List<ObjectId> parentIds = new ArrayList<>(parents.size());
+        for (String parent : parents) {
+            parentIds.add(ObjectId.parse(parent));
+        }
+        return new Entry(ObjectId.parse(commit.getID()), parentIds,
+                bloom(changedPaths(commit, first)));
+    }
+
+    /** Returns the paths whose versions differ between COMMIT and PARENT,
+     *  which may be null, in order. */
+    static TreeSet<String> changedPaths(Commit commit, Commit parent) {
+        TreeSet<String> result = new TreeSet<>();
+        for (String file : commit.filenames()) {
+            if (parent == null
+                    || !commit.idOf(file).equals(parent.idOf(file))) {
+                result.add(file);
+            }
+        }
+        if (parent != null) {
+            for (String file : parent.filenames()) {
+                if (!commit.tracking(file)) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if PATH is one of CHANGED or a directory containing
+     *  one of them. The empty PATH is the top directory, which contains
+     *  them all. */
+    static boolean touches(Collection<String> changed, String path) {
+        if (path.isEmpty()) {
+            return !changed.isEmpty();
+        }
+        for (String file : changed) {
+            if (file.equals(path) || file.startsWith(path + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns a Bloom filter holding PATHS and all of their parent
+     *  directories. */
+    private static long[] bloom(Collection<String> paths) {
+        Set<String> keys = new HashSet<>();
+        for (String path : paths) {
+            for (String p = path; p != null; p = parentOf(p)) {
+                keys.add(p);
+            }
+        }
+        if (keys.isEmpty()) {
+            return new long[0];
+        }
+        int words = (keys.size() * BITS_PER_KEY + Long.SIZE - 1) / Long.SIZE;
+        long[] result = new long[Math.min(words, MAX_WORDS)];
+        long bits = (long) result.length * Long.SIZE;
+        for (String key : keys) {
+            long h1 = hash1(key), h2 = hash2(key);
+            for (int i = 0; i < HASHES; i += 1) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                result[(int) (bit / Long.SIZE)] |= 1L << (bit % Long.SIZE);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the directory containing PATH, or null if it has none. */
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash <= 0 ? null : path.substring(0, slash);
+    }
+
+    /** Returns the first hash of KEY used by the Bloom filters (FNV-1a). */
+    private static long hash1(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Returns the second hash of KEY used by the Bloom filters. */
+    private static long hash2(String key) {
+        long h = key.hashCode() * 0x9e3779b97f4a7c15L;
+        return (h ^ (h >>> 29)) | 1;
+    }
+
+    /** Appends ENTRIES to the stored graph. */
+    private static void append(List<Entry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        File file = join(GRAPH);
+        try (LockFile lock = LockFile.acquire(file)) {
+            Files.write(file.toPath(), encode(entries),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Could not write the commit graph.");
+        }
+    }
+
+    /** Returns ENTRIES as they are stored. */
+    private static byte[] encode(List<Entry> entries) {
+        int size = 0;
+        for (Entry entry : entries) {
+            size += UID_BYTES * (1 + entry._parents.size()) + 1
+                + Short.BYTES + Long.BYTES * entry._bloom.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        for (Entry entry : entries) {
+            entry._id.write(out);
+            out.put((byte) entry._parents.size());
+            for (ObjectId parent : entry._parents) {
+                parent.write(out);
+            }
+            out.putShort((short) entry._bloom.length);
+            for (long word : entry._bloom) {
+                out.putLong(word);
+            }
+        }
+        return out.array();
+    }
+
+    /** Returns the commit ID at the front of BUF, advancing past it. */
+    private static ObjectId readId(ByteBuffer buf) {
+        byte[] raw = new byte[UID_BYTES];
+        buf.get(raw);
+        return ObjectId.fromBytes(raw);
+    }
+
+    /** The length of an ID in bytes. */
+    private static final int UID_BYTES = 20;
+
+    /** The path to the commit graph. */
+    static final String GRAPH = ".gitlet/Objects/commit-graph";
+
+    /** The number of hash functions used by the Bloom filters. */
+    private static final int HASHES = 7;
+
+    /** Bloom filter bits per path, giving about a 1% false positive
+     *  rate. */
+    private static final int BITS_PER_KEY = 10;
+
+    /** The largest Bloom filter, in words. Commits changing more paths than
+     *  this accommodates get a filter that matches almost everything. */
+    private static final int MAX_WORDS = 0xffff;
+
+    /** Records by commit ID, in the order they were written. */
+    private final LinkedHashMap<ObjectId, Entry> _entries =
+        new LinkedHashMap<>();
+
+    /** Records by position. */
+    private final ArrayList<Entry> _byPosition = new ArrayList<>();
+
+    /** The number of bytes of the stored graph read into this one. */
+    private long _loadedSize;
+
+}
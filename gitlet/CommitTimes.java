@@ -0,0 +1,160 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** An index of the times at which commits were made, so that history can
+ *  be ordered and sliced by date without reading commit objects. Each
+ *  record of .gitlet/Objects/commit-times is a commit's time in
+ *  milliseconds followed by its raw ID. Records are appended as commits
+ *  are made, so the file is already close to time order and sorting it
+ *  costs little; commits that lack a record are read and recorded the
+ *  first time they are asked about.
+ *  @author Jack Mango */
+class CommitTimes {
+
+    /** Returns the stored index. */
+    static CommitTimes load() {
+        CommitTimes result = new CommitTimes();
+        File file = join(TIMES);
+        if (file.exists()) {
+            ByteBuffer buf = mapContents(file);
+            byte[] raw = new byte[UID_BYTES];
+            while (buf.remaining() >= RECORD) {
+                long time = buf.getLong();
+                buf.get(raw);
+                result._times.put(ObjectId.fromBytes(raw).toString(), time);
+            }
+        }
+        return result;
+    }
+
+    /** Appends a record for the newly made COMMIT without reading the rest
+     *  of the index. */
+    static void record(Commit commit) {
+        append(Map.of(commit.getID(), commit.getTime()));
+    }
+
+    /** Appends records for the newly added commits in TIMES, a map from
+     *  commit IDs to times, without reading the rest of the index. */
+    static void record(Map<String, Long> times) {
+        if (!times.isEmpty()) {
+            append(times);
+        }
+    }
+
+    /** Returns the time at which the commit COMMITID was made, in
+     *  milliseconds. */
+    long get(String commitId) {
+        ensure(List.of(commitId));
+        return _times.get(commitId);
+    }
+
+    /** Returns those of the commits IDS that were made no earlier than
+     *  SINCE and no later than UNTIL, newest first. */
+    List<String> newestFirst(Collection<String> ids, long since,
+                             long until) {
+        ensure(ids);
+        sort();
+        Set<String> wanted = new HashSet<>(ids);
+        List<String> result = new ArrayList<>();
+        int lo = 0, hi = _at.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (_at[mid] <= until) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo - 1; i >= 0 && _at[i] >= since; i -= 1) {
+            if (wanted.contains(_ids[i])) {
+                result.add(_ids[i]);
+            }
+        }
+        return result;
+    }
+
+    /** Makes sure that each of the commits IDS has a record, reading the
+     *  commits that lack one and appending records for them. */
+    void ensure(Collection<String> ids) {
+        Map<String, Long> added = new LinkedHashMap<>();
+        for (String id : ids) {
+            if (!_times.containsKey(id) && !added.containsKey(id)) {
+                added.put(id, getCommit(id).getTime());
+            }
+        }
+        if (!added.isEmpty()) {
+            _times.putAll(added);
+            _ids = null;
+            append(added);
+        }
+    }
+
+    /** Fills in _ids and _at with the recorded commits in order of time,
+     *  unless they are up to date. */
+    private void sort() {
+        if (_ids != null) {
+            return;
+        }
+        List<Map.Entry<String, Long>> entries =
+            new ArrayList<>(_times.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey()));
+        _ids = new String[entries.size()];
+        _at = new long[entries.size()];
+        for (int i = 0; i < _ids.length; i += 1) {
+            _ids[i] = entries.get(i).getKey();
+            _at[i] = entries.get(i).getValue();
+        }
+    }
+
+    /** Appends records for the commits in TIMES, a map from commit IDs to
+     *  times, to the stored index. */
+    private static void append(Map<String, Long> times) {
+        ByteBuffer records = ByteBuffer.allocate(times.size() * RECORD);
+        for (Map.Entry<String, Long> entry : times.entrySet()) {
+            records.putLong(entry.getValue());
+            ObjectId.parse(entry.getKey()).write(records);
+        }
+        File file = join(TIMES);
+        try (LockFile lock = LockFile.acquire(file)) {
+            Files.write(file.toPath(), records.array(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Could not write the commit times.");
+        }
+    }
+
+    /** The path to the index. */
+    static final String TIMES = ".gitlet/Objects/commit-times";
+
+    /** The length of an ID in bytes. */
+    private static final int UID_BYTES = 20;
+
+    /** The length of a record: a time and an ID. */
+    private static final int RECORD = Long.BYTES + UID_BYTES;
+
+    /** Times of the recorded commits by ID, in the order recorded. */
+    private final LinkedHashMap<String, Long> _times = new LinkedHashMap<>();
+
+    /** The IDs of the recorded commits in order of time, then ID, or null
+     *  if they have not been sorted since the last record was added. */
+    private String[] _ids;
+
+    /** The times of the commits in _ids. */
+    private long[] _at;
+
+}
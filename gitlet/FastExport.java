@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Writes the history of every branch as a stream that FastImport reads.
+ *  The stream is made of commands, each a line followed by lines of
+ *  operands and ended by a blank line:
+ *  <pre>
+ *  blob                        commit
+ *  mark :N                     mark :N
+ *  data LENGTH                 time MILLISECONDS OFFSET
+ *  LENGTH bytes of contents    data LENGTH
+ *                              LENGTH bytes of message
+ *  reset BRANCH                from REF
+ *  from REF                    merge REF
+ *                              M REF PATH
+ *                              D PATH
+ *  </pre>
+ *  A REF is a mark or an ID. Commits follow their parents; a commit
+ *  without "from" is a child of the initial commit. Its "M" and "D" lines
+ *  give the files that differ from its first parent. Each blob is written
+ *  once, before the first commit that uses it, and objects are read from
+ *  packs where they are packed without being unpacked.
+ *  @author Jack Mango */
+class FastExport {
+
+    /** A stream written to OUT. */
+    private FastExport(OutputStream out) {
+        _out = out;
+    }
+
+    /** Writes the history of every branch to OUT. */
+    static void write(OutputStream out) throws IOException {
+        new FastExport(out).writeAll();
+    }
+
+    /** Writes every commit reachable from a branch, parents first, and
+     *  then the heads of the branches. */
+    private void writeAll() throws IOException {
+        CommitGraph graph = CommitGraph.load();
+        List<String> names = Branch.names();
+        Map<String, String> heads = new HashMap<>();
+        for (String name : names) {
+            heads.put(name, Branch.read(name).getHead());
+            graph.ensure(heads.get(name));
+        }
+        Set<ObjectId> reachable = new HashSet<>();
+        Deque<ObjectId> queue = new ArrayDeque<>();
+        for (String head : heads.values()) {
+            queue.add(ObjectId.parse(head));
+        }
+        while (!queue.isEmpty()) {
+            CommitGraph.Entry entry = graph.get(queue.remove());
+            if (entry != null && reachable.add(entry.getID())) {
+                queue.addAll(entry.parents());
+            }
+        }
+        for (CommitGraph.Entry entry : graph.entries()) {
+            if (reachable.contains(entry.getID())
+                    && !entry.parents().isEmpty()) {
+                writeCommit(entry);
+            }
+        }
+        for (String name : names) {
+            line("reset %s", name);
+            line("from %s", ref(heads.get(name)));
+            line("");
+        }
+    }
+
+    /** Writes the commit of ENTRY, preceded by any blobs it adds that have
+     *  not been written yet. */
+    private void writeCommit(CommitGraph.Entry entry) throws IOException {
+        Commit commit = read(commitFile(entry.getID().toString()),
+                Commit.class);
+        List<ObjectId> parents = entry.parents();
+        Commit first = read(commitFile(parents.get(0).toString()),
+                Commit.class);
+        Set<String> changed = CommitGraph.changedPaths(commit, first);
+        for (String path : changed) {
+            ObjectId blobId = commit.idOf(path);
+            if (blobId != null && !_marks.containsKey(blobId.toString())) {
+                Blob blob = read(blobFile(blobId.toString()), Blob.class);
+                line("blob");
+                line("mark %s", mark(blobId.toString()));
+                data(blob.getContents());
+                line("");
+            }
+        }
+        line("commit");
+        line("mark %s", mark(commit.getID()));
+        int offset = Math.abs(commit.getOffset());
+        line("time %d %c%02d%02d", commit.getTime(),
+                commit.getOffset() < 0 ? '-' : '+', offset / 3600,
+                offset / 60 % 60);
+        data(commit.getMessage());
+        if (!(first instanceof InitialCommit)) {
+            line("from %s", ref(parents.get(0).toString()));
+        }
+        if (parents.size() > 1) {
+            line("merge %s", ref(parents.get(1).toString()));
+        }
+        for (String path : changed) {
+            ObjectId blobId = commit.idOf(path);
+            if (blobId == null) {
+                line("D %s", path);
+            } else {
+                line("M %s %s", ref(blobId.toString()), path);
+            }
+        }
+        line("");
+    }
+
+    /** Returns a new mark for the object ID. */
+    private String mark(String id) {
+        String mark = ":" + (_marks.size() + 1);
+        _marks.put(id, mark);
+        return mark;
+    }
+
+    /** Returns the mark of the object ID, or ID itself if it has none. */
+    private String ref(String id) {
+        return _marks.getOrDefault(id, id);
+    }
+
+    /** Writes a line formatted from FORMAT and ARGS. */
+    private void line(String format, Object... args) throws IOException {
+        _out.write(String.format(format, args)
+                .getBytes(StandardCharsets.UTF_8));
+        _out.write('\n');
+    }
+
+    /** Writes TEXT as a "data" operand. */
+    private void data(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        line("data %d", bytes.length);
+        _out.write(bytes);
+        _out.write('\n');
+    }
+
+    /** Returns the object of type TYPE stored loose in FILE or, if it is
+     *  packed, read from its pack without unpacking it. */
+    static <T extends Serializable> T read(File file, Class<T> type) {
+        if (file.exists()) {
+            return readObject(file, type);
+        }
+        String key = Pack.keyOf(file);
+        for (Pack pack : Pack.all()) {
+            if (pack.contains(key)) {
+                return readObject(pack.get(key), type);
+            }
+        }
+        throw error("Missing object %s.", key);
+    }
+
+    /** Where the stream is written. */
+    private final OutputStream _out;
+
+    /** The marks of the objects written so far, by ID. */
+    private final Map<String, String> _marks = new HashMap<>();
+
+}
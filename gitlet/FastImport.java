@@ -0,0 +1,344 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** Reads a stream in the form FastExport writes and adds the commits,
+ *  blobs and branch heads it describes to this repository. Every new
+ *  object goes into one new pack rather than a loose file, and the commit
+ *  graph, the commit times and the branches are written once, after the
+ *  pack is complete, so a stream that fails part way changes nothing.
+ *  The contents of blobs are spooled to a scratch file until a commit
+ *  gives them a name, and only recently used commits are kept in memory,
+ *  so memory use depends on the number of commits rather than on the size
+ *  of the history.
+ *  @author Jack Mango */
+class FastImport {
+
+    /** An import reading IN into the pack PACK, spooling contents to the
+     *  channel SPOOL. */
+    private FastImport(InputStream in, Pack.Writer pack, FileChannel spool) {
+        _in = in;
+        _pack = pack;
+        _spool = spool;
+    }
+
+    /** Adds the history in the stream IN to this repository and prints
+     *  how many commits it added. */
+    static void read(InputStream in) throws IOException {
+        File dest = join(PACKSDIR,
+                "pack-" + System.currentTimeMillis() + Pack.SUFFIX);
+        Path spool = tempFile(join(GITLETDIR));
+        try (Pack.Writer pack = new Pack.Writer(dest);
+             FileChannel channel = FileChannel.open(spool,
+                     StandardOpenOption.READ, StandardOpenOption.WRITE,
+                     StandardOpenOption.DELETE_ON_CLOSE)) {
+            FastImport stream = new FastImport(in, pack, channel);
+            stream.readAll();
+            if (pack.size() > 0) {
+                pack.finish();
+            }
+            stream.finish();
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /** Reads every command of the stream. */
+    private void readAll() throws IOException {
+        for (String line = line(); line != null; line = line()) {
+            switch (line) {
+            case "":
+                break;
+            case "blob":
+                readBlob();
+                break;
+            case "commit":
+                readCommit();
+                break;
+            default:
+                if (line.startsWith("reset ")) {
+                    String name = line.substring("reset ".length());
+                    _heads.put(name, commitId(operand("from")));
+                } else {
+                    throw malformed(line);
+                }
+            }
+        }
+    }
+
+    /** Reads the operands of a blob command, spooling its contents. */
+    private void readBlob() throws IOException {
+        String mark = operand("mark");
+        byte[] contents = data();
+        long offset = _spool.size();
+        ByteBuffer buf = ByteBuffer.wrap(contents);
+        while (buf.hasRemaining()) {
+            _spool.write(buf, offset + buf.position());
+        }
+        _blobs.put(mark, new long[] {offset, contents.length});
+    }
+
+    /** Reads the operands of a commit command and adds the commit. */
+    private void readCommit() throws IOException {
+        String mark = operand("mark");
+        String[] time = operand("time").split(" ");
+        if (time.length != 2) {
+            throw malformed("time " + String.join(" ", time));
+        }
+        ZonedDateTime when;
+        try {
+            when = Instant.ofEpochMilli(Long.parseLong(time[0]))
+                .atZone(ZoneOffset.of(time[1]));
+        } catch (RuntimeException excp) {
+            throw malformed("time " + String.join(" ", time));
+        }
+        String message = new String(data(), StandardCharsets.UTF_8);
+        String first = null, second = null;
+        TreeMap<String, ObjectId> tree = new TreeMap<>();
+        for (String line = line(); line != null && !line.isEmpty();
+             line = line()) {
+            if (line.startsWith("from ") && first == null) {
+                first = commitId(line.substring("from ".length()));
+                tree.putAll(commit(first).tree());
+            } else if (line.startsWith("merge ") && second == null) {
+                second = commitId(line.substring("merge ".length()));
+            } else if (line.startsWith("M ") && line.indexOf(' ', 2) > 0) {
+                int space = line.indexOf(' ', 2);
+                String path = line.substring(space + 1);
+                tree.put(path, blob(line.substring(2, space), path));
+            } else if (line.startsWith("D ")) {
+                tree.remove(line.substring(2));
+            } else {
+                throw malformed(line);
+            }
+        }
+        Commit parent = first == null ? initial() : commit(first);
+        Commit commit = second == null
+            ? new Commit(message, parent.getID(), when, tree)
+            : new MergeCommit(message, when, parent.getID(), second, tree);
+        String id = commit.getID();
+        String key = key(commitFile(id));
+        if (!_pack.contains(key) && !hasCommit(id)) {
+            _pack.add(key, serialize(commit));
+            _graph.add(CommitGraph.entryFor(commit,
+                    commit.declaredParentIds(), parent));
+            _times.put(id, commit.getTime());
+            _added += 1;
+        }
+        _commits.put(id, commit);
+        _marks.put(mark, id);
+    }
+
+    /** Returns the ID of the blob REF, which is a blob mark or the ID of a
+     *  blob stored under PATH, adding the blob to the pack if it is
+     *  new. */
+    private ObjectId blob(String ref, String path) throws IOException {
+        long[] spooled = _blobs.get(ref);
+        if (spooled == null) {
+            if (!hasBlob(ref)) {
+                throw error("Unknown blob %s.", ref);
+            }
+            return ObjectId.parse(ref);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) spooled[1]);
+        while (buf.hasRemaining()) {
+            _spool.read(buf, spooled[0] + buf.position());
+        }
+        Blob blob = new Blob(path,
+                new String(buf.array(), StandardCharsets.UTF_8));
+        blob.commit();
+        String id = blob.getID();
+        if (!hasBlob(id)) {
+            _pack.add(key(blobFile(id)), serialize(blob));
+        }
+        return ObjectId.parse(id);
+    }
+
+    /** Returns the ID of the commit REF, which is a commit mark or a
+     *  commit ID, abbreviated as for checkout. */
+    private String commitId(String ref) {
+        String id = _marks.get(ref);
+        if (id != null) {
+            return id;
+        } else if (ref.startsWith(":")) {
+            throw error("Unknown commit %s.", ref);
+        } else if (!hasCommit(ref)) {
+            throw error("No commit with that id exists.");
+        }
+        id = fullCommitId(ref);
+        _existing.add(id);
+        return id;
+    }
+
+    /** Returns the commit COMMITID, from this stream or the repository. */
+    private Commit commit(String commitId) {
+        Commit result = _commits.get(commitId);
+        if (result != null) {
+            return result;
+        }
+        File file = commitFile(commitId);
+        String key = key(file);
+        result = _pack.contains(key)
+            ? readObject(ByteBuffer.wrap(_pack.read(key)), Commit.class)
+            : FastExport.read(file, Commit.class);
+        _commits.put(commitId, result);
+        return result;
+    }
+
+    /** Returns this repository's initial commit. */
+    private Commit initial() {
+        if (_initial == null) {
+            _initial = new InitialCommit();
+        }
+        return _initial;
+    }
+
+    /** Writes the records of the commits read and moves the branches
+     *  named in the stream, once the pack holding them is in place. */
+    private void finish() {
+        CommitGraph graph = CommitGraph.load();
+        for (String id : _existing) {
+            graph.ensure(id);
+        }
+        CommitGraph.record(_graph);
+        CommitTimes.record(_times);
+        for (Map.Entry<String, String> head : _heads.entrySet()) {
+            Branch branch;
+            if (Branch.exists(head.getKey())) {
+                branch = Branch.read(head.getKey());
+                branch.setHead(head.getValue());
+            } else {
+                branch = new Branch(head.getKey(),
+                        getCommit(head.getValue()));
+            }
+            branch.save();
+        }
+        System.out.printf("Imported %d commits.%n", _added);
+    }
+
+    /** Returns the value of the next line, which must be NAME followed by
+     *  a space and the value. */
+    private String operand(String name) throws IOException {
+        String line = line();
+        if (line == null || !line.startsWith(name + " ")) {
+            throw malformed(line == null ? "end of stream" : line);
+        }
+        return line.substring(name.length() + 1);
+    }
+
+    /** Returns the bytes of the next "data" operand and the newline that
+     *  follows them. */
+    private byte[] data() throws IOException {
+        String length = operand("data");
+        int n;
+        try {
+            n = Integer.parseInt(length);
+        } catch (NumberFormatException excp) {
+            throw malformed("data " + length);
+        }
+        byte[] result = _in.readNBytes(n);
+        if (result.length < n || _in.read() != '\n') {
+            throw malformed("data " + length);
+        }
+        return result;
+    }
+
+    /** Returns the next line of the stream, without its newline, or null
+     *  at its end. */
+    private String line() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c = _in.read();
+        if (c < 0) {
+            return null;
+        }
+        while (c >= 0 && c != '\n') {
+            line.write(c);
+            c = _in.read();
+        }
+        _lineNumber += 1;
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Returns an error reporting that LINE, the current line, is not
+     *  understood. */
+    private GitletException malformed(String line) {
+        return error("Malformed stream at line %d: %s", _lineNumber, line);
+    }
+
+    /** Returns the pack key of the object stored loose in FILE. */
+    private static String key(File file) {
+        return Pack.keyOf(file);
+    }
+
+    /** The most commits kept in memory. */
+    private static final int COMMITS_KEPT = 4096;
+
+    /** Where the stream is read from. */
+    private final InputStream _in;
+
+    /** The pack receiving the new objects. */
+    private final Pack.Writer _pack;
+
+    /** The scratch file holding the contents of blobs. */
+    private final FileChannel _spool;
+
+    /** The number of lines read. */
+    private int _lineNumber;
+
+    /** The number of commits added. */
+    private int _added;
+
+    /** The initial commit, or null if it has not been needed. */
+    private Commit _initial;
+
+    /** The offset and length in _spool of each blob, by mark. */
+    private final Map<String, long[]> _blobs = new HashMap<>();
+
+    /** The ID of each commit read, by mark. */
+    private final Map<String, String> _marks = new HashMap<>();
+
+    /** The commits already in the repository that the stream names. */
+    private final Set<String> _existing = new HashSet<>();
+
+    /** The commit graph records of the commits added, in order. */
+    private final List<CommitGraph.Entry> _graph = new ArrayList<>();
+
+    /** The times of the commits added, by ID, in order. */
+    private final Map<String, Long> _times = new LinkedHashMap<>();
+
+    /** The new heads of branches, by name. */
+    private final Map<String, String> _heads = new LinkedHashMap<>();
+
+    /** Recently used commits, by ID. */
+    private final Map<String, Commit> _commits =
+        new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Commit> eldest) {
+                return size() > COMMITS_KEPT;
+            }
+        };
+
+}
@@ -0,0 +1,205 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static gitlet.Utils.*;
+
+/** Verifies the integrity of a repository: that every commit and blob,
+ *  loose or packed, can be read and hashes to its name, that commits refer
+ *  only to objects that are present, and that branches and the staging
+ *  area refer only to objects that are present. The 256 commit
+ *  directories, the blobs and the packs are checked in parallel on a
+ *  work-stealing pool, each task in the context of the repository being
+ *  checked. Objects are read where they are stored and are not faulted in
+ *  from packs.
+ *  @author Jack Mango */
+class Fsck {
+
+    /** Returns a description of each problem found in this repository, in
+     *  order. */
+    static List<String> run() {
+        Fsck fsck = new Fsck(RepoContext.current());
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.submit(() -> fsck._context.run(fsck::checkObjects)).get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("Could not check the repository.");
+        } finally {
+            pool.shutdown();
+        }
+        fsck.checkRefs();
+        List<String> result = new ArrayList<>(fsck._problems);
+        Collections.sort(result);
+        return result;
+    }
+
+    /** A check of the repository of CONTEXT. */
+    private Fsck(RepoContext context) {
+        _context = context;
+    }
+
+    /** Checks every commit, blob and pack, in parallel. */
+    private void checkObjects() {
+        List<String> blobs = plainFilenamesIn(BLOBSDIR);
+        List<Pack> packs = new ArrayList<>();
+        List<String> names = plainFilenamesIn(PACKSDIR);
+        for (String name : names == null ? List.<String>of() : names) {
+            if (name.endsWith(Pack.SUFFIX)) {
+                try {
+                    packs.add(new Pack(join(PACKSDIR, name)));
+                } catch (RuntimeException excp) {
+                    report("Pack %s is corrupt.", name);
+                }
+            }
+        }
+        IntStream.range(0, 256 + blobs.size() + packs.size()).parallel()
+            .forEach(i -> _context.run(() -> {
+                if (i < 256) {
+                    checkCommitDir(twoHex(i));
+                } else if (i < 256 + blobs.size()) {
+                    String id = blobs.get(i - 256);
+                    if (!id.startsWith(".")) {
+                        checkBlob(id, () -> mapContents(blobFile(id)));
+                    }
+                } else {
+                    checkPack(packs.get(i - 256 - blobs.size()));
+                }
+            }));
+    }
+
+    /** Checks the loose commits in the commit directory PREFIX. */
+    private void checkCommitDir(String prefix) {
+        List<String> names = plainFilenamesIn(join(COMMITSDIR, prefix));
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!name.startsWith(".")) {
+                File file = join(COMMITSDIR, prefix, name);
+                checkCommit(prefix + name, () -> mapContents(file));
+            }
+        }
+    }
+
+    /** Checks each object in PACK. */
+    private void checkPack(Pack pack) {
+        for (String key : pack.keys()) {
+            String[] parts = key.split("/");
+            if (parts[0].equals("Commits") && parts.length == 3) {
+                checkCommit(parts[1] + parts[2], () -> pack.get(key));
+            } else if (parts[0].equals("Blobs") && parts.length == 2) {
+                checkBlob(parts[1], () -> pack.get(key));
+            } else {
+                report("Pack %s holds unknown object %s.",
+                        pack.getFile().getName(), key);
+            }
+        }
+    }
+
+    /** Checks the commit ID whose bytes are supplied by CONTENTS. */
+    private void checkCommit(String id, Source contents) {
+        Commit commit = read(contents, Commit.class);
+        if (commit == null) {
+            report("Commit %s is corrupt.", id);
+            return;
+        } else if (!commit.getID().equals(id)) {
+            report("Commit %s does not match its contents.", id);
+        }
+        for (String parent : commit.declaredParentIds()) {
+            if (!hasCommit(parent) && !Shallow.isBoundary(id)) {
+                report("Commit %s is missing parent %s.", id, parent);
+            }
+        }
+        for (String blob : commit.hashes()) {
+            if (!hasBlob(blob)) {
+                report("Commit %s is missing blob %s.", id, blob);
+            }
+        }
+    }
+
+    /** Checks the blob ID whose bytes are supplied by CONTENTS. */
+    private void checkBlob(String id, Source contents) {
+        Blob blob = read(contents, Blob.class);
+        if (blob == null) {
+            report("Blob %s is corrupt.", id);
+        } else if (!blob.getID().equals(id)) {
+            report("Blob %s does not match its contents.", id);
+        }
+    }
+
+    /** Checks that the branches, tags and the staging area refer to objects
+     *  that are present. */
+    private void checkRefs() {
+        for (String name : Branch.names()) {
+            String head;
+            try {
+                head = Branch.read(name).getHead();
+            } catch (RuntimeException excp) {
+                report("Branch %s is corrupt.", name);
+                continue;
+            }
+            if (!hasCommit(head)) {
+                report("Branch %s points to missing commit %s.", name, head);
+            }
+        }
+        for (String name : Tag.names()) {
+            String commit;
+            try {
+                commit = Tag.read(name).getCommit();
+            } catch (RuntimeException excp) {
+                report("Tag %s is corrupt.", name);
+                continue;
+            }
+            if (!hasCommit(commit)) {
+                report("Tag %s points to missing commit %s.", name, commit);
+            }
+        }
+        StagingArea stg = StagingArea.load();
+        for (String file : stg.additionDump()) {
+            if (!hasBlob(stg.additionGetID(file))) {
+                report("Staged file %s is missing blob %s.", file,
+                        stg.additionGetID(file));
+            }
+        }
+    }
+
+    /** Returns the object of type EXPECTED held in the bytes supplied by
+     *  CONTENTS, or null if they cannot be read as one. */
+    private static <T extends Serializable> T read(Source contents,
+                                                   Class<T> expected) {
+        try {
+            return readObject(contents.get(), expected);
+        } catch (RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Records the problem described by FORMAT and ARGS. */
+    private void report(String format, Object... args) {
+        _problems.add(String.format(format, args));
+    }
+
+    /** Supplies the bytes of an object. */
+    private interface Source {
+        /** Returns the bytes of the object. */
+        ByteBuffer get();
+    }
+
+    /** The context of the repository being checked, in which the pool's
+     *  tasks run. */
+    private final RepoContext _context;
+
+    /** Problems found so far. */
+    private final Queue<String> _problems = new ConcurrentLinkedQueue<>();
+
+}
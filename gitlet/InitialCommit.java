@@ -1,8 +1,10 @@
 package gitlet;
 
+import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
 
 /** A child class of the Commit class.
  * Used specifically for the first commit created in a repository.
@@ -19,7 +21,7 @@ public class InitialCommit extends Commit {
      *  Generates the ID by calling SHA-1 hash function on this commit's
      *  timestamp and message*/
     @Override
-    public String getID() {
+    protected String computeID() {
         return Utils.sha1(getMessage(), getTimestamp());
     }
 
@@ -29,6 +31,12 @@ public class InitialCommit extends Commit {
         return null;
     }
 
+    @Override
+    /** Returns an empty list. */
+    public List<String> declaredParentIds() {
+        return Collections.emptyList();
+    }
+
     @Override
     /** Since the initial commit tracks no files, none will ever be in the way;
      *  always should be false. */
@@ -36,20 +44,20 @@ public class InitialCommit extends Commit {
         return false;
     }
 
+    /** The version of the serialized form of the initial commit, fixed at
+     *  the one that older versions of gitlet computed for it. */
+    private static final long serialVersionUID = 8335720947690412027L;
+
     /** This commit's parents' IDs. */
     private static final Commit PARENT = null;
 
     /** The message associated with this commit. */
     private static final String MESSAGE = "initial commit";
 
-    /** Timestamp formatter used for commits. */
-    private static final DateTimeFormatter FORMAT =
-            DateTimeFormatter.ofPattern("EEE LLL d kk:mm:ss uuuu Z");
-
-    /** The timestamp associated with this commit. */
-    private static final String TIMESTAMP = FORMAT.format(ZonedDateTime.of(1970,
-            1, 1, 0, 0, 0, 0,
-            ZoneId.of("UTC")).withZoneSameInstant(ZoneId.systemDefault()));
+    /** The time associated with this commit: the epoch, in this
+     *  system's zone. */
+    private static final ZonedDateTime TIMESTAMP =
+            ZonedDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault());
 
 }
 
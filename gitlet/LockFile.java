@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import static gitlet.Utils.*;
+
+/** An exclusive lock on a single mutable file in the repository, such as a
+ *  branch or the staging area. The lock is held by creating FILE.lock, which
+ *  only one process can do at a time. New contents are written to the lock
+ *  file and renamed over the locked file, so readers never see a partly
+ *  written file and never need to take the lock themselves.
+ *  @author Jack Mango */
+class LockFile implements AutoCloseable {
+
+    /** Takes the lock on TARGET, waiting up to WAIT milliseconds for another
+     *  process to release it. */
+    static LockFile acquire(File target, long wait) {
+        File lock = new File(target.getPath() + ".lock");
+        long deadline = System.currentTimeMillis() + wait;
+        while (true) {
+            try {
+                Files.createFile(lock.toPath());
+                return new LockFile(target, lock);
+            } catch (FileAlreadyExistsException excp) {
+                if (System.currentTimeMillis() >= deadline) {
+                    throw error("Unable to lock %s; another gitlet process"
+                            + " is updating it.", target.getName());
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw error("Interrupted while locking %s.",
+                            target.getName());
+                }
+            } catch (IOException excp) {
+                throw error("Unable to lock %s.", target.getName());
+            }
+        }
+    }
+
+    /** Takes the lock on TARGET, waiting the default time. */
+    static LockFile acquire(File target) {
+        return acquire(target, DEFAULT_WAIT);
+    }
+
+    /** A held lock on TARGET, represented by the file LOCK. */
+    private LockFile(File target, File lock) {
+        _target = target;
+        _lock = lock;
+    }
+
+    /** Replaces the contents of the locked file with CONTENTS, as for
+     *  Utils.writeContents, and releases the lock. */
+    void commit(Object... contents) {
+        writeContents(_lock, contents);
+        try {
+            Files.move(_lock.toPath(), _target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw error("Unable to write %s.", _target.getName());
+        }
+        _released = true;
+    }
+
+    /** Releases the lock without changing the locked file. Does nothing if
+     *  the lock has already been released. */
+    @Override
+    public void close() {
+        if (!_released) {
+            _lock.delete();
+            _released = true;
+        }
+    }
+
+    /** Milliseconds to wait for a lock by default. */
+    private static final long DEFAULT_WAIT = 2000;
+
+    /** Milliseconds between attempts to take a lock. */
+    private static final long RETRY_DELAY = 10;
+
+    /** The file this lock protects. */
+    private final File _target;
+
+    /** The lock file itself. */
+    private final File _lock;
+
+    /** True once the lock has been committed or released. */
+    private boolean _released;
+
+}
@@ -1,6 +1,25 @@
 package gitlet;
 
-import java.io.File;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import static gitlet.Utils.*;
 
@@ -10,73 +29,241 @@ import static gitlet.Utils.*;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> ...., or java gitlet.Main batch [--watch] [FILE]
+     *  to run one command per line of FILE or of the standard input.
+     *  Commands other than init work on the repository of the nearest
+     *  directory at or above the current one that has a .gitlet directory
+     *  or file, and paths given to them are relative to the current
+     *  directory. The process exits with status 1 if a command reported
+     *  that the repository is damaged, and with status 0 otherwise. */
     public static void main(String... args) {
+        Path here = Paths.get("");
+        RepoContext context = args.length > 0 && args[0].equals("init")
+            ? RepoContext.open(here, here) : RepoContext.discover(here);
         try {
-            if (args.length == 0) {
-                throw error("Please enter a command.");
-            } else if (args[0].equals("init")) {
-                if (args.length == 1) {
-                    init();
+            context.run(() -> {
+                if (args.length > 0 && args[0].equals("batch")) {
+                    batch(args);
                 } else {
-                    throw error("Incorrect operands.");
+                    checkpoint(execute(readRepo(), args));
                 }
-            } else if (!_repo.exists()) {
-                throw error("Not in an initialized Gitlet directory.");
-            } else {
-                verifyInp(args);
-            }
+            });
         } catch (GitletException err) {
             message("%s", err.getMessage());
         }
-        System.exit(0);
+        System.exit(Boolean.TRUE.equals(context.get(FAILED)) ? 1 : 0);
+    }
+
+    /** Runs each line of the file named in ARGS, or of the standard input
+     *  if none is named, as a command. All commands share one in-memory
+     *  repository and staging area, which are written once at the end and
+     *  whenever a line reads "checkpoint". Blank lines and lines beginning
+     *  with "#" are skipped. An error ends only the command that made it.
+     *  If ARGS includes "--watch", a Monitor remembers the hashes of
+     *  working files between commands. */
+    public static void batch(String[] args) {
+        List<String> operands =
+            new ArrayList<>(Arrays.asList(args).subList(1, args.length));
+        boolean watch = operands.remove("--watch");
+        Reader source;
+        if (operands.isEmpty()) {
+            source = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        } else if (operands.size() == 1) {
+            try {
+                source = Files.newBufferedReader(Paths.get(operands.get(0)),
+                        StandardCharsets.UTF_8);
+            } catch (IOException excp) {
+                throw error("File does not exist.");
+            }
+        } else {
+            throw error("Incorrect operands.");
+        }
+        StagingArea.hold();
+        Repository repo = readRepo();
+        try (BufferedReader input = new BufferedReader(source)) {
+            for (String line = input.readLine(); line != null;
+                 line = input.readLine()) {
+                String[] command = splitCommand(line);
+                try {
+                    if (command.length == 0 || command[0].startsWith("#")) {
+                        continue;
+                    } else if (command[0].equals("checkpoint")) {
+                        checkpoint(repo);
+                    } else {
+                        if (watch && Monitor.start()) {
+                            Monitor.refresh();
+                        }
+                        repo = execute(repo, command);
+                    }
+                } catch (GitletException err) {
+                    message("%s", err.getMessage());
+                }
+            }
+        } catch (IOException excp) {
+            throw error("Could not read commands.");
+        } finally {
+            checkpoint(repo);
+        }
+    }
+
+    /** Returns the words of the command LINE. Words are separated by
+     *  whitespace, except within single or double quotes, and a backslash
+     *  outside single quotes makes the next character literal. */
+    static String[] splitCommand(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (c == '\\' && quote != '\'' && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+                inWord = true;
+            } else if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /** Runs the command ARGS against REPO, which is null if there is no
+     *  repository in this directory, and returns the repository
+     *  afterwards. */
+    static Repository execute(Repository repo, String[] args) {
+        Reflog.command(String.join(" ", args));
+        if (args.length == 0) {
+            throw error("Please enter a command.");
+        } else if (args[0].equals("init")) {
+            if (args.length == 1) {
+                init();
+                return readRepo();
+            } else {
+                throw error("Incorrect operands.");
+            }
+        } else if (repo == null) {
+            throw error("Not in an initialized Gitlet directory.");
+        } else {
+            verifyInp(repo, args);
+            return repo;
+        }
+    }
+
+    /** Returns the repository object stored in this directory, or null if
+     *  there is none. */
+    static Repository readRepo() {
+        if (!join(REPOOBJ).exists()) {
+            return null;
+        }
+        Repository repo = readObject(join(REPOOBJ), Repository.class);
+        RepoContext.current().put(SAVED_ACTIVE, repo.activeName());
+        return repo;
+    }
+
+    /** Writes whatever REPO, which may be null, and the staging area have
+     *  changed since they were last written. */
+    static void checkpoint(Repository repo) {
+        StagingArea.flush();
+        RepoContext context = RepoContext.current();
+        if (repo != null
+                && !repo.activeName().equals(context.get(SAVED_ACTIVE))) {
+            saveRepo(repo);
+            context.put(SAVED_ACTIVE, repo.activeName());
+        }
     }
 
     /** Creates a new git repository object and sets up its file structure.
      *  If a git repository already exists in this directory,
      *  gives an error message. */
     public static void init() {
-        if (_repo.exists()) {
+        if (join(REPOOBJ).exists()) {
             throw error("A Gitlet version-control"
                     + " system already exists in the current directory.");
         } else {
-            (new File(OBJECTSDIR)).mkdirs();
-            writeObject(_repo, new Repository());
+            join(OBJECTSDIR).mkdirs();
+            writeObject(join(REPOOBJ), new Repository());
         }
     }
 
-    /** Serializes the repository object REPO. */
+    /** Records that the command being run found the repository damaged,
+     *  so that the process exits with a nonzero status. */
+    static void fail() {
+        RepoContext.current().put(FAILED, true);
+    }
+
+    /** Serializes the repository object REPO, under a lock so that two
+     *  processes switching branches do not interleave their writes. */
     public static void saveRepo(Repository repo) {
-        Utils.writeObject(_repo, repo);
+        try (LockFile lock = LockFile.acquire(join(REPOOBJ))) {
+            lock.commit(serialize(repo));
+        }
     }
 
     /** Verifies that command in ARGS exists and has the appropriate number
-     * of operands. Then executes that command. */
-    public static void verifyInp(String[] args) {
-        Repository repo = Utils.readObject(_repo, Repository.class);
+     * of operands. Then executes that command on REPO. */
+    public static void verifyInp(Repository repo, String[] args) {
         if (args.length == 1) {
-            singleArgs(args[0]);
+            singleArgs(repo, args[0]);
+        } else if (args[0].equals("add") || args[0].equals("rm")) {
+            List<String> paths = new ArrayList<>();
+            for (int i = 1; i < args.length; i += 1) {
+                paths.add(path(args[i]));
+            }
+            multiArgs(repo, args[0], paths);
+        } else if (args[0].equals("log") || args[0].equals("global-log")) {
+            logArgs(repo, args[0], Arrays.asList(args).subList(1, args.length));
+        } else if (args[0].equals("sparse")) {
+            repo.sparse(args[1], Arrays.asList(args).subList(2, args.length));
+        } else if (args[0].equals("bisect")) {
+            repo.bisect(args[1], Arrays.asList(args).subList(2, args.length));
+        } else if (args[0].equals("archive")) {
+            repo.archive(Arrays.asList(args).subList(1, args.length));
+        } else if (args[0].equals("worktree")) {
+            repo.worktree(Arrays.asList(args).subList(1, args.length));
+        } else if (args[0].equals("tag")) {
+            repo.tag(Arrays.asList(args).subList(1, args.length));
+        } else if (args[0].equals("stash")) {
+            repo.stash(args[1], Arrays.asList(args).subList(2, args.length));
         } else if (args.length > 1 && args[0].equals("checkout")) {
             if (args.length == 2) {
                 repo.checkoutBranch(args[1]);
             } else if (args.length == 3 && args[1].equals("--")) {
-                repo.checkoutFile(args[2]);
+                repo.checkoutFile(path(args[2]));
             } else if (args.length == 4 && args[2].equals("--")) {
-                repo.checkoutFile(args[1], args[3]);
+                repo.checkoutFile(args[1], path(args[3]));
             } else {
                 throw error("Incorrect operands.");
             }
         } else if (args.length == 2) {
-            doubleArgs(args[0], args[1]);
+            doubleArgs(repo, args[0], args[1]);
+        } else if (args.length == 3) {
+            tripleArgs(repo, args[0], args[1], args[2]);
         } else {
             throw error("Incorrect operands.");
         }
-        saveRepo(repo);
     }
 
-    /** Do length one arguments given INPUT. */
-    public static void singleArgs(String input) {
-        Repository repo = Utils.readObject(_repo, Repository.class);
+    /** Do length one arguments given INPUT on REPO. */
+    public static void singleArgs(Repository repo, String input) {
         switch (input) {
         case "commit":
             throw error("Please enter a commit message.");
@@ -89,23 +276,123 @@ public class Main {
         case "status":
             repo.status();
             break;
+        case "fsck":
+            repo.fsck();
+            break;
+        case "tags":
+            repo.tags();
+            break;
+        case "pack-refs":
+            repo.packRefs();
+            break;
+        case "unshallow":
+            repo.unshallow();
+            break;
+        case "fast-export":
+            repo.fastExport(null);
+            break;
+        case "fast-import":
+            repo.fastImport(null);
+            break;
+        case "stash":
+            repo.stash("push", Collections.emptyList());
+            break;
+        case "sparse":
+        case "bisect":
+        case "tag":
+        case "archive":
+        case "worktree":
+            throw error("Incorrect operands.");
         default:
             throw error("No command with that name exists.");
 
         }
-        saveRepo(repo);
     }
 
-    /** Handles commands with two words; FIRST and SECOND. */
-    public static void doubleArgs(String first, String second) {
-        Repository repo = Utils.readObject(_repo, Repository.class);
+    /** Handles the commands FIRST that take any number of PATHS, each of which
+     *  may be a file, a directory or a glob pattern, on REPO. */
+    public static void multiArgs(Repository repo, String first,
+                                 List<String> paths) {
         switch (first) {
         case "add":
-            repo.add(second);
+            repo.add(paths);
             break;
         case "rm":
-            repo.remove(second);
+            repo.remove(paths);
             break;
+        default:
+            throw error("No command with that name exists.");
+        }
+    }
+
+    /** Handles the log command FIRST, "log" or "global-log", with
+     *  OPERANDS on REPO. The operands of log may be "--" and a path;
+     *  otherwise those of either command are "--since TIME" and "--until
+     *  TIME", in any order, limiting the commits shown to those made in
+     *  that range. */
+    public static void logArgs(Repository repo, String first,
+                               List<String> operands) {
+        if (first.equals("log") && operands.size() == 2
+                && operands.get(0).equals("--")) {
+            repo.log(path(operands.get(1)));
+            return;
+        }
+        long since = Long.MIN_VALUE, until = Long.MAX_VALUE;
+        for (int i = 0; i < operands.size(); i += 2) {
+            if (i + 1 == operands.size()) {
+                throw error("Incorrect operands.");
+            }
+            switch (operands.get(i)) {
+            case "--since":
+                since = parseTime(operands.get(i + 1), false);
+                break;
+            case "--until":
+                until = parseTime(operands.get(i + 1), true);
+                break;
+            default:
+                throw error("Incorrect operands.");
+            }
+        }
+        if (first.equals("log")) {
+            repo.log(since, until);
+        } else {
+            repo.globalLog(since, until);
+        }
+    }
+
+    /** Returns the time TEXT names, in milliseconds since the epoch. TEXT
+     *  is either a date as log prints it or an ISO date, optionally
+     *  followed by a time and an offset. Times without an offset are in
+     *  this system's zone. Dates are printed to the second, so a time
+     *  names a whole second and a date alone a whole day, and the result
+     *  is its first moment, or its last if END. */
+    static long parseTime(String text, boolean end) {
+        TemporalAccessor time;
+        try {
+            time = ISO_TIME.parseBest(text, OffsetDateTime::from,
+                    LocalDateTime::from, LocalDate::from);
+        } catch (DateTimeParseException excp) {
+            try {
+                time = OffsetDateTime.parse(text, Commit.getFormat());
+            } catch (DateTimeParseException excp2) {
+                throw error("Invalid date.");
+            }
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        if (time instanceof LocalDate) {
+            LocalDate day = (LocalDate) time;
+            return (end ? day.plusDays(1).atStartOfDay(zone).minusNanos(1)
+                    : day.atStartOfDay(zone)).toInstant().toEpochMilli();
+        } else if (time instanceof LocalDateTime) {
+            time = ((LocalDateTime) time).atZone(zone);
+        }
+        return Instant.from(time).toEpochMilli() + (end ? 999 : 0);
+    }
+
+    /** Handles commands with two words; FIRST and SECOND on REPO. */
+    public static void doubleArgs(Repository repo, String first,
+                                  String second) {
+        switch (first) {
         case "branch":
             repo.branch(second);
             break;
@@ -121,6 +408,30 @@ public class Main {
         case "find":
             repo.find(second);
             break;
+        case "cherry-pick":
+            repo.cherryPick(second);
+            break;
+        case "rebase":
+            repo.rebase(second);
+            break;
+        case "blame":
+            repo.blame(path(second));
+            break;
+        case "reflog":
+            repo.reflog(second);
+            break;
+        case "fast-export":
+            repo.fastExport(second);
+            break;
+        case "fast-import":
+            repo.fastImport(second);
+            break;
+        case "shallow":
+            repo.shallow(second);
+            break;
+        case "rm-remote":
+            repo.rmRemote(second);
+            break;
         case "checkout":
             repo.checkoutBranch(second);
             break;
@@ -135,7 +446,46 @@ public class Main {
         }
     }
 
-    /** File representing the repository object. */
-    private static File _repo = new File(".gitlet/Objects/repoObj");
+    /** Handles commands with three words; FIRST, SECOND and THIRD, on
+     *  REPO. */
+    public static void tripleArgs(Repository repo, String first,
+                                  String second, String third) {
+        switch (first) {
+        case "add-remote":
+            repo.addRemote(second, third);
+            break;
+        case "push":
+            repo.push(second, third);
+            break;
+        case "fetch":
+            repo.fetch(second, third);
+            break;
+        case "pull":
+            repo.pull(second, third);
+            break;
+        default:
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Returns the name, relative to the top of the working tree, of the
+     *  file at PATH, which is relative to the current directory. */
+    private static String path(String path) {
+        return RepoContext.current().name(path);
+    }
+
+    /** The ISO forms of dates accepted by log. */
+    private static final DateTimeFormatter ISO_TIME =
+        DateTimeFormatter.ofPattern("uuuu-MM-dd[['T'][' ']HH:mm[:ss][XXX]]");
+
+    /** The key of the name of each repository's active branch as last
+     *  read or written to REPOOBJ. */
+    private static final RepoContext.Key<String> SAVED_ACTIVE =
+        new RepoContext.Key<>();
+
+    /** The key of whether a command run on each repository found it
+     *  damaged. */
+    private static final RepoContext.Key<Boolean> FAILED =
+        new RepoContext.Key<>();
 
 }
@@ -1,8 +1,14 @@
 package gitlet;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.time.ZonedDateTime;
-import java.util.Formatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import static gitlet.Utils.*;
 
@@ -17,16 +23,26 @@ public class MergeCommit extends Commit {
     public MergeCommit(Branch current, Branch target) {
         super(String.format("Merged %s into %s.",
                         target.getName(), current.getName()),
-                ZonedDateTime.now().format(getFormat()));
-        _first = current.getHead();
-        _second = target.getHead();
+                ZonedDateTime.now());
+        _first = ObjectId.parse(current.getHead());
+        _second = ObjectId.parse(target.getHead());
+    }
+
+    /** Creates a mergecommit with MESSAGE made at TIME whose parents are
+     *  the commits FIRST and SECOND and that tracks the files in BLOBS, a
+     *  map from file names to blob IDs. */
+    MergeCommit(String message, ZonedDateTime time, String first,
+                String second, Map<String, ObjectId> blobs) {
+        super(message, time, blobs);
+        _first = ObjectId.parse(first);
+        _second = ObjectId.parse(second);
     }
 
     /** Updates the blobs this commit is tracking; tracks the exact
      * same blobs as those tracked in OTHER. */
     public void updateTracking(Commit other) {
         for (String hash : other.hashes()) {
-            add(readObject(join(BLOBSDIR, hash), Blob.class));
+            add(getBlob(hash));
         }
     }
 
@@ -34,11 +50,11 @@ public class MergeCommit extends Commit {
     /** Add the given BLOB to the list of files tracked by commit. */
     @Override
     public void add(Blob blob) {
-        File file = new File(blob.getFilename());
+        File file = workFile(blob.getFilename());
         if (file.exists()) {
             Blob currBlob = new Blob(blob.getFilename(),
                     readContentsAsString(file));
-            if (!join(BLOBSDIR, currBlob.getID()).exists()) {
+            if (!hasBlob(currBlob.getID())) {
                 throw error("There is an untracked file in the way;"
                         + " delete it, or add and commit it first.");
             }
@@ -49,53 +65,74 @@ public class MergeCommit extends Commit {
     /** Adds the blob corresonding to BLOBID to the list of files tracked by
      *  this commit. */
     public void add(String blobId) {
-        add(readObject(join(BLOBSDIR, blobId), Blob.class));
+        add(getBlob(blobId));
     }
 
     @Override
     /** Almost the same as the regular commit id, except includes both parent
-     *  ids. */
-    public String getID() {
-        Formatter f = new Formatter();
-        for (String hash : hashes()) {
-            f.format(hash);
+     *  ids. Blob ids are taken in filename order so that the id does not
+     *  depend on hash set iteration order. */
+    protected String computeID() {
+        List<Object> vals = new ArrayList<Object>();
+        for (String file : filenames()) {
+            vals.add(idOf(file));
         }
-        return Utils.sha1(f.toString(), getFirst(), getSecond(), getMessage(),
+        Collections.addAll(vals, _first, _second, getMessage(),
                 getTimestamp());
+        return Utils.sha1(vals);
     }
 
     /** Returns the first parent. */
     @Override
     public Commit getParent() {
-        return readObject(commitFile(getFirst()), Commit.class);
+        return parentCommit(getFirst());
+    }
+
+    @Override
+    public List<String> declaredParentIds() {
+        return Arrays.asList(getFirst(), getSecond());
     }
 
     @Override
     /** Same as commit just added extra line to indicate merge. */
     public String toString() {
         return String.format("===\ncommit %s\nMerge: %s %s\nDate: %s\n%s",
-                getID(), _first.substring(0, 7), _second.substring(0, 7),
+                getID(), getFirst().substring(0, 7),
+                getSecond().substring(0, 7),
                 getTimestamp(), getMessage());
     }
 
     /** Returns the first parent ID. */
     public String getFirst() {
-        return _first;
+        return _first.toString();
     }
 
     /** Returns the second parent ID. */
     public String getSecond() {
-        return _second;
+        return _second.toString();
+    }
+
+    /** Reads this merge commit from IN. Merge commits written by older
+     *  versions of gitlet hold their parents' IDs as strings. */
+    private void readObject(ObjectInputStream in)
+        throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        _first = ObjectId.of(fields.get("_first", null));
+        _second = ObjectId.of(fields.get("_second", null));
     }
 
+    /** The version of the serialized form of merge commits, fixed at the
+     *  one that older versions of gitlet computed for it. */
+    private static final long serialVersionUID = 2674820419353185074L;
+
     /** Stores the first parent of this mergecommit; the commit id
      *  corresponding to the
      * head of the branch merged into at the time of merging. */
-    private String _first;
+    private ObjectId _first;
 
     /** Stores the second parent of this mergecommit; the commit id
      *  corresponding to the head of the branch that was merged with
      *  at the time of merging. */
-    private String _second;
+    private ObjectId _second;
 
 }
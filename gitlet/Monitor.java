@@ -0,0 +1,234 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static gitlet.Utils.*;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/** Remembers the blob IDs of working files for the life of a long-running
+ *  gitlet process, watching the working directory so that a file is
+ *  hashed again only after it has changed. Without a monitor, every
+ *  query reads and hashes the file.
+ *
+ *  Watch events arrive asynchronously, so before each command refresh()
+ *  creates a fence file in a watched directory of its own and drains
+ *  events until the fence's creation is seen. Every change made before
+ *  the fence has been reported by then. If the watch queue overflows, or
+ *  the fence does not appear in time (as with polling watch services),
+ *  everything remembered is forgotten and files are hashed afresh.
+ *  @author Jack Mango */
+class Monitor {
+
+    /** Starts watching the working directory, if this has not already been
+     *  done. Returns true if the monitor is running. If the directory
+     *  cannot be watched, for instance because the system's limit on
+     *  watches has been reached, queries simply go to the files. */
+    static boolean start() {
+        RepoContext context = RepoContext.current();
+        if (context.get(MONITOR) == null && join(GITLETDIR).isDirectory()) {
+            try {
+                context.put(MONITOR, new Monitor());
+            } catch (IOException excp) {
+                context.put(MONITOR, null);
+            }
+        }
+        return running();
+    }
+
+    /** Returns true if a monitor is running. */
+    static boolean running() {
+        return monitor() != null;
+    }
+
+    /** Takes account of every change to the working directory made since
+     *  the last refresh. Does nothing if no monitor is running. */
+    static void refresh() {
+        if (running()) {
+            monitor().sync();
+        }
+    }
+
+    /** Returns the ID that a blob of the working file PATH would have, or
+     *  null if there is no such plain file. */
+    static String hashOf(String path) {
+        Monitor monitor = monitor();
+        if (monitor == null) {
+            return compute(path);
+        }
+        String key = Paths.get(path).normalize().toString();
+        String result = monitor._hashes.get(key);
+        if (result == null) {
+            result = compute(path);
+            monitor._hashes.put(key, result == null ? ABSENT : result);
+        }
+        return result == ABSENT ? null : result;
+    }
+
+    /** Forgets what is known about PATH, which gitlet itself is about to
+     *  change, and anything beneath it. */
+    static void invalidate(String path) {
+        if (running()) {
+            monitor().forget(Paths.get(path).normalize().toString());
+        }
+    }
+
+    /** Returns the monitor of the current repository, or null if none is
+     *  running. */
+    private static Monitor monitor() {
+        return RepoContext.current().get(MONITOR);
+    }
+
+    /** Returns the ID of a blob of the working file PATH, or null if there
+     *  is no such plain file. */
+    private static String compute(String path) {
+        File file = workFile(path);
+        return file.isFile() ? sha1(file, path) : null;
+    }
+
+    /** A monitor of the current working tree. */
+    private Monitor() throws IOException {
+        _watcher = FileSystems.getDefault().newWatchService();
+        _fenceDir = join(GITLETDIR, "watch").toPath();
+        _top = workFile("").toPath();
+        Files.createDirectories(_fenceDir);
+        _fenceKey = _fenceDir.register(_watcher, ENTRY_CREATE);
+        registerAll(_top);
+    }
+
+    /** Watches DIR and every directory beneath it, except .gitlet. */
+    private void registerAll(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path d,
+                    BasicFileAttributes attrs) throws IOException {
+                if (_top.relativize(d).normalize().startsWith(GITLETDIR)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                _dirs.put(d.register(_watcher, ENTRY_CREATE, ENTRY_DELETE,
+                        ENTRY_MODIFY), d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Creates a fence file and processes events until its creation is
+     *  reported. */
+    private void sync() {
+        Path fence = _fenceDir.resolve("fence-" + _fences);
+        _fences += 1;
+        try {
+            Files.deleteIfExists(fence);
+            Files.createFile(fence);
+            long deadline = System.nanoTime() + FENCE_TIMEOUT;
+            boolean seen = false;
+            while (!seen) {
+                long wait = deadline - System.nanoTime();
+                WatchKey key = wait > 0
+                    ? _watcher.poll(wait, TimeUnit.NANOSECONDS) : null;
+                if (key == null) {
+                    overflow();
+                    break;
+                }
+                seen = process(key, fence.getFileName());
+            }
+            Files.deleteIfExists(fence);
+        } catch (IOException | InterruptedException excp) {
+            overflow();
+        }
+    }
+
+    /** Applies the events reported by KEY. Returns true if one of them was
+     *  the creation of the fence file FENCE. */
+    private boolean process(WatchKey key, Path fence) throws IOException {
+        boolean result = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow();
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (key == _fenceKey) {
+                result |= name.equals(fence);
+                continue;
+            }
+            Path dir = _dirs.get(key);
+            if (dir == null) {
+                continue;
+            }
+            Path path = dir.resolve(name);
+            forget(_top.relativize(path).normalize().toString());
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                registerAll(path);
+            }
+        }
+        if (!key.reset()) {
+            _dirs.remove(key);
+        }
+        return result;
+    }
+
+    /** Forgets what is known about PATH and anything beneath it. */
+    private void forget(String path) {
+        _hashes.remove(path);
+        _hashes.subMap(path + "/", path + "0").clear();
+    }
+
+    /** Forgets everything, after events may have been lost, and watches
+     *  any directories that were created meanwhile. */
+    private void overflow() {
+        _hashes.clear();
+        try {
+            registerAll(_top);
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Marks a path remembered not to name a plain file. */
+    private static final String ABSENT = new String("");
+
+    /** How long to wait for a fence to be reported, in nanoseconds. */
+    private static final long FENCE_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+
+    /** The key of the monitor of each repository. */
+    private static final RepoContext.Key<Monitor> MONITOR =
+        new RepoContext.Key<>();
+
+    /** The service reporting changes. */
+    private final WatchService _watcher;
+
+    /** The top directory of the working tree. */
+    private final Path _top;
+
+    /** The directory holding fence files. */
+    private final Path _fenceDir;
+
+    /** The key of _fenceDir. */
+    private final WatchKey _fenceKey;
+
+    /** The number of fences created so far. */
+    private int _fences;
+
+    /** The watched working directories, by key. */
+    private final Map<WatchKey, Path> _dirs = new HashMap<>();
+
+    /** Remembered blob IDs of working files, or ABSENT, by normalized
+     *  path. */
+    private final TreeMap<String, String> _hashes = new TreeMap<>();
+
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/** The SHA-1 ID of a commit or blob, held as its 20 raw bytes in two longs
+ *  and an int rather than as a 40-character string. IDs compare, hash and
+ *  order by value; their order is the order of their hexadecimal forms.
+ *  @author Jack Mango */
+final class ObjectId implements Comparable<ObjectId>, Serializable {
+
+    /** The ID whose bytes are, in order, those of HI, MID and LO. */
+    private ObjectId(long hi, long mid, int lo) {
+        _hi = hi;
+        _mid = mid;
+        _lo = lo;
+    }
+
+    /** Returns the ID whose 20 bytes are RAW. */
+    static ObjectId fromBytes(byte[] raw) {
+        return new ObjectId(word(raw, 0, 8), word(raw, 8, 8),
+                (int) word(raw, 16, 4));
+    }
+
+    /** Returns the ID written as the 40 hexadecimal digits HEX, or null if
+     *  HEX is null. */
+    static ObjectId parse(String hex) {
+        if (hex == null) {
+            return null;
+        }
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw new IllegalArgumentException("bad object id: " + hex);
+        }
+        return new ObjectId(hexWord(hex, 0, 16), hexWord(hex, 16, 16),
+                (int) hexWord(hex, 32, 8));
+    }
+
+    /** Returns VALUE, an ID as a serialized object stores it, as an ID.
+     *  Objects written by older versions of gitlet hold the 40 hexadecimal
+     *  digits as a string instead. */
+    static ObjectId of(Object value) {
+        if (value instanceof String) {
+            return parse((String) value);
+        }
+        return (ObjectId) value;
+    }
+
+    /** Returns the hexadecimal form of ID, or null if ID is null. */
+    static String toString(ObjectId id) {
+        return id == null ? null : id.toString();
+    }
+
+    /** Feeds the hexadecimal form of this ID to MD, as if it were hashed as
+     *  a string, without making the string. */
+    void update(MessageDigest md) {
+        md.update(hexBytes());
+    }
+
+    /** Writes the 20 raw bytes of this ID to BUF. */
+    void write(ByteBuffer buf) {
+        buf.putLong(_hi).putLong(_mid).putInt(_lo);
+    }
+
+    /** Returns the hexadecimal form of this ID as ASCII bytes. */
+    byte[] hexBytes() {
+        byte[] result = new byte[Utils.UID_LENGTH];
+        putHex(result, 0, _hi, 16);
+        putHex(result, 16, _mid, 16);
+        putHex(result, 32, _lo, 8);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        byte[] hex = hexBytes();
+        char[] result = new char[hex.length];
+        for (int i = 0; i < hex.length; i += 1) {
+            result[i] = (char) hex[i];
+        }
+        return new String(result);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId other = (ObjectId) obj;
+        return _hi == other._hi && _mid == other._mid && _lo == other._lo;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_hi >>> 32) ^ (int) _hi;
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int c = Long.compareUnsigned(_hi, other._hi);
+        if (c == 0) {
+            c = Long.compareUnsigned(_mid, other._mid);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_lo, other._lo);
+        }
+        return c;
+    }
+
+    /** Returns the big-endian number in the N bytes of RAW starting at
+     *  START. */
+    private static long word(byte[] raw, int start, int n) {
+        long result = 0;
+        for (int i = start; i < start + n; i += 1) {
+            result = (result << 8) | (raw[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Returns the number written by the N hexadecimal digits of HEX
+     *  starting at START. */
+    private static long hexWord(String hex, int start, int n) {
+        long result = 0;
+        for (int i = start; i < start + n; i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("bad object id: " + hex);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    /** Writes the low N hexadecimal digits of WORD into DEST starting at
+     *  START, most significant first. */
+    private static void putHex(byte[] dest, int start, long word, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            dest[start + i] = HEX[(int) (word & 0xf)];
+            word >>>= 4;
+        }
+    }
+
+    /** The hexadecimal digits, as ASCII bytes. */
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'a', 'b', 'c', 'd', 'e', 'f',
+    };
+
+    /** The version of the serialized form of object IDs. */
+    private static final long serialVersionUID = 6757641892128545050L;
+
+    /** The first eight bytes of this ID. */
+    private final long _hi;
+
+    /** The next eight bytes of this ID. */
+    private final long _mid;
+
+    /** The last four bytes of this ID. */
+    private final int _lo;
+
+}
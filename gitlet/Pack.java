@@ -0,0 +1,398 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** A single file holding many repository objects. Each object is stored
+ *  byte for byte as it would be as a loose file, under a key that is its
+ *  path relative to the .gitlet directory (for example "Blobs/<id>").
+ *  The file is laid out as the magic number, the objects' bytes, an index
+ *  of (key, offset, length) entries sorted by key, and finally the offset
+ *  of the index, so that a pack can be written in one pass and opened by
+ *  decoding only the index. Offsets and lengths are longs, so packs and
+ *  the objects in them may exceed 2 GB; an object is mapped or read on
+ *  its own when it is needed, and copied out of the pack channel to
+ *  channel.
+ *  @author Jack Mango */
+class Pack {
+
+    /** Opens the pack stored in FILE. */
+    Pack(File file) {
+        _file = file;
+        try (FileChannel channel = open()) {
+            long size = channel.size();
+            if (size < MAGIC.length + Long.BYTES) {
+                throw error("Corrupt pack %s.", file.getName());
+            }
+            int magic = region(channel, 0, MAGIC.length).getInt();
+            if (magic != ByteBuffer.wrap(MAGIC).getInt()) {
+                throw error("Corrupt pack %s.", file.getName());
+            }
+            long indexStart =
+                region(channel, size - Long.BYTES, Long.BYTES).getLong();
+            if (indexStart < MAGIC.length || indexStart > size - Long.BYTES) {
+                throw error("Corrupt pack %s.", file.getName());
+            }
+            ByteBuffer index = region(channel, indexStart,
+                    size - Long.BYTES - indexStart);
+            int count = index.getInt();
+            for (int i = 0; i < count; i += 1) {
+                byte[] key = new byte[index.getShort()];
+                index.get(key);
+                long offset = index.getLong();
+                long length = index.getLong();
+                _index.put(new String(key, StandardCharsets.UTF_8),
+                        new long[] {offset, length});
+            }
+        } catch (IOException | BufferUnderflowException excp) {
+            throw error("Corrupt pack %s.", file.getName());
+        }
+    }
+
+    /** Returns the file holding this pack. */
+    File getFile() {
+        return _file;
+    }
+
+    /** Returns true if this pack holds the object with KEY. */
+    boolean contains(String key) {
+        return _index.containsKey(key);
+    }
+
+    /** Returns the keys of all objects in this pack, in order. */
+    NavigableSet<String> keys() {
+        return _index.navigableKeySet();
+    }
+
+    /** Returns a buffer over the bytes of the object with KEY, which is
+     *  mapped if it is large and read otherwise. */
+    ByteBuffer get(String key) {
+        long[] entry = _index.get(key);
+        try (FileChannel channel = open()) {
+            return region(channel, entry[0], entry[1]);
+        } catch (IOException excp) {
+            throw error("Unable to read pack %s.", _file.getName());
+        }
+    }
+
+    /** Writes the bytes of the object with KEY to OUT, a channel whose
+     *  position is at the end of its contents, without passing them through
+     *  the heap. */
+    void copy(String key, FileChannel out) {
+        long[] entry = _index.get(key);
+        try (FileChannel channel = open()) {
+            long done = 0;
+            while (done < entry[1]) {
+                long moved = channel.transferTo(entry[0] + done,
+                        entry[1] - done, out);
+                if (moved <= 0) {
+                    throw new IOException("truncated");
+                }
+                done += moved;
+            }
+        } catch (IOException excp) {
+            throw error("Unable to read pack %s.", _file.getName());
+        }
+    }
+
+    /** Returns a channel reading this pack. */
+    private FileChannel open() throws IOException {
+        return FileChannel.open(_file.toPath(), StandardOpenOption.READ);
+    }
+
+    /** Returns the LENGTH bytes of this pack that start at OFFSET, read
+     *  from CHANNEL; as for mapContents, many bytes are mapped rather than
+     *  read. A single buffer holds at most 2 GB, so a larger object can
+     *  only be copied. */
+    private ByteBuffer region(FileChannel channel, long offset, long length)
+        throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw error("An object in pack %s is too large to read.",
+                    _file.getName());
+        } else if (length >= MAP_THRESHOLD) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                throw new IOException("truncated");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** Returns the packs in this repository, opening them the first time
+     *  they are needed. */
+    static synchronized List<Pack> all() {
+        RepoContext context = RepoContext.current();
+        List<Pack> result = context.get(ALL);
+        if (result == null) {
+            result = new ArrayList<>();
+            List<String> names = plainFilenamesIn(PACKSDIR);
+            if (names != null) {
+                for (String name : names) {
+                    if (name.endsWith(SUFFIX)) {
+                        result.add(new Pack(join(PACKSDIR, name)));
+                    }
+                }
+            }
+            context.put(ALL, result);
+        }
+        return result;
+    }
+
+    /** Forgets the packs opened so far, so that the next call to all()
+     *  sees packs added since. */
+    static synchronized void reload() {
+        RepoContext.current().put(ALL, null);
+    }
+
+    /** Returns the pack key of the object stored loose in FILE. */
+    static String keyOf(File file) {
+        Path rel = join(GITLETDIR).getAbsoluteFile().toPath()
+                .relativize(file.getAbsoluteFile().toPath());
+        return rel.toString().replace(File.separatorChar, '/');
+    }
+
+    /** If the object that would be stored loose in FILE is in a pack, writes
+     *  it to FILE and returns true; otherwise returns false. This is how
+     *  packed objects are faulted in when they are first needed. */
+    static boolean fault(File file) {
+        String key = keyOf(file);
+        for (Pack pack : all()) {
+            if (pack.contains(key)) {
+                file.getAbsoluteFile().getParentFile().mkdirs();
+                try {
+                    Path tmp = tempFile(
+                        file.getAbsoluteFile().getParentFile());
+                    try (FileChannel out = FileChannel.open(tmp,
+                            StandardOpenOption.WRITE)) {
+                        pack.copy(key, out);
+                    }
+                    Files.move(tmp, file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException excp) {
+                    throw error("Unable to unpack %s.", key);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the smallest key in any pack that begins with PREFIX, or
+     *  null if there is none. */
+    static String complete(String prefix) {
+        String result = null;
+        for (Pack pack : all()) {
+            String key = pack.keys().ceiling(prefix);
+            if (key != null && key.startsWith(prefix)
+                    && (result == null || key.compareTo(result) < 0)) {
+                result = key;
+            }
+        }
+        return result;
+    }
+
+    /** Writes a new pack. Objects are appended as they are added; the index
+     *  is written and the pack is moved into place by finish(). */
+    static class Writer implements AutoCloseable {
+
+        /** A writer for a pack that will be stored in DEST. */
+        Writer(File dest) {
+            _dest = dest;
+            try {
+                File dir = dest.getAbsoluteFile().getParentFile();
+                dir.mkdirs();
+                _tmp = tempFile(dir);
+                _out = FileChannel.open(_tmp, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                _out.write(ByteBuffer.wrap(MAGIC));
+            } catch (IOException excp) {
+                throw error("Unable to create pack %s.", dest.getName());
+            }
+        }
+
+        /** Returns true if an object with KEY has already been added. */
+        boolean contains(String key) {
+            return _entries.containsKey(key);
+        }
+
+        /** Returns the number of objects added so far. */
+        int size() {
+            return _entries.size();
+        }
+
+        /** Returns the bytes of the object with KEY, which has been
+         *  added. */
+        byte[] read(String key) {
+            long[] entry = _entries.get(key);
+            if (entry[1] > Integer.MAX_VALUE) {
+                throw error("An object in pack %s is too large to read.",
+                        _dest.getName());
+            }
+            ByteBuffer buf = ByteBuffer.allocate((int) entry[1]);
+            try {
+                while (buf.hasRemaining()) {
+                    if (_out.read(buf, entry[0] + buf.position()) < 0) {
+                        throw new IOException("truncated");
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("Unable to read pack %s.", _dest.getName());
+            }
+            return buf.array();
+        }
+
+        /** Adds DATA as the object with KEY. */
+        void add(String key, byte[] data) {
+            if (contains(key)) {
+                return;
+            }
+            try {
+                long offset = _out.position();
+                ByteBuffer buf = ByteBuffer.wrap(data);
+                while (buf.hasRemaining()) {
+                    _out.write(buf);
+                }
+                _entries.put(key, new long[] {offset, data.length});
+            } catch (IOException excp) {
+                throw error("Unable to write pack %s.", _dest.getName());
+            }
+        }
+
+        /** Adds the contents of FILE as the object with KEY, copying it
+         *  with FileChannel.transferTo so that its bytes need not pass
+         *  through the heap. */
+        void add(String key, File file) {
+            if (contains(key)) {
+                return;
+            }
+            try (FileChannel in = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                long offset = _out.position();
+                long size = in.size();
+                long done = 0;
+                while (done < size) {
+                    done += in.transferTo(done, size - done, _out);
+                }
+                _entries.put(key, new long[] {offset, size});
+            } catch (IOException excp) {
+                throw error("Unable to write pack %s.", _dest.getName());
+            }
+        }
+
+        /** Adds the object with KEY in the pack FROM, copying it channel
+         *  to channel. */
+        void add(String key, Pack from) {
+            if (contains(key)) {
+                return;
+            }
+            try {
+                long offset = _out.position();
+                from.copy(key, _out);
+                _entries.put(key, new long[] {offset,
+                    _out.position() - offset});
+            } catch (IOException excp) {
+                throw error("Unable to write pack %s.", _dest.getName());
+            }
+        }
+
+        /** Writes the index and moves the finished pack into place. */
+        void finish() {
+            try {
+                long indexStart = _out.position();
+                int size = Integer.BYTES + Long.BYTES;
+                for (String key : _entries.keySet()) {
+                    size += Short.BYTES
+                        + key.getBytes(StandardCharsets.UTF_8).length
+                        + 2 * Long.BYTES;
+                }
+                ByteBuffer index = ByteBuffer.allocate(size);
+                index.putInt(_entries.size());
+                for (Map.Entry<String, long[]> e : _entries.entrySet()) {
+                    byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    index.putShort((short) key.length).put(key);
+                    index.putLong(e.getValue()[0]);
+                    index.putLong(e.getValue()[1]);
+                }
+                index.putLong(indexStart).flip();
+                while (index.hasRemaining()) {
+                    _out.write(index);
+                }
+                _out.force(true);
+                _out.close();
+                Files.move(_tmp, _dest.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                _finished = true;
+            } catch (IOException excp) {
+                throw error("Unable to write pack %s.", _dest.getName());
+            }
+            reload();
+        }
+
+        /** Discards the pack if it was not finished. */
+        @Override
+        public void close() {
+            if (!_finished) {
+                try {
+                    _out.close();
+                    Files.deleteIfExists(_tmp);
+                } catch (IOException excp) {
+                    return;
+                }
+            }
+        }
+
+        /** Where the finished pack is stored. */
+        private final File _dest;
+
+        /** The file being written. */
+        private Path _tmp;
+
+        /** Channel writing _tmp. */
+        private FileChannel _out;
+
+        /** Offset and length of each object added, by key. */
+        private final TreeMap<String, long[]> _entries = new TreeMap<>();
+
+        /** True once the pack has been moved into place. */
+        private boolean _finished;
+    }
+
+    /** Suffix of the names of pack files. */
+    static final String SUFFIX = ".pack";
+
+    /** The first bytes of every pack. */
+    private static final byte[] MAGIC =
+        "GPK2".getBytes(StandardCharsets.US_ASCII);
+
+    /** The key of the packs of each repository, once opened. */
+    private static final RepoContext.Key<List<Pack>> ALL =
+        new RepoContext.Key<>();
+
+    /** The file holding this pack. */
+    private final File _file;
+
+    /** Offset and length of each object, by key. */
+    private final TreeMap<String, long[]> _index = new TreeMap<>();
+
+}
@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static gitlet.Utils.*;
+
+/** The history of each branch's head. Every update of a branch appends a
+ *  fixed-size record to .gitlet/Logs/BRANCH holding the old and new head
+ *  IDs as raw bytes, the time in milliseconds and the command that made
+ *  the update, so writing a record is a single append and the Nth most
+ *  recent record is found by its offset alone. Records are never
+ *  rewritten; they are removed only with their branch.
+ *  @author Jack Mango */
+class Reflog {
+
+    /** Records COMMAND as the command making any branch updates that
+     *  follow. */
+    static void command(String command) {
+        RepoContext.current().put(RUNNING, command);
+    }
+
+    /** Appends to the log of the branch NAME in the repository whose
+     *  .gitlet directory is DIR a record of its head moving from OLD, which
+     *  is null for a new branch, to HEAD. */
+    static void append(File dir, String name, ObjectId old, ObjectId head) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD);
+        (old == null ? NONE : old).write(record);
+        head.write(record);
+        record.putLong(System.currentTimeMillis());
+        String running = RepoContext.current().get(RUNNING);
+        byte[] command = (running == null ? "" : running)
+            .getBytes(StandardCharsets.UTF_8);
+        record.put(command, 0, Math.min(command.length, COMMAND));
+        File file = join(dir, "Logs", name);
+        file.getParentFile().mkdirs();
+        try {
+            Files.write(file.toPath(), record.array(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException excp) {
+            throw error("Could not write the log of branch %s.", name);
+        }
+    }
+
+    /** Deletes the log of the branch NAME. */
+    static void delete(String name) {
+        join(LOGSDIR, name).delete();
+    }
+
+    /** Returns the head that the branch NAME had N updates ago. */
+    static String headAt(String name, int n) {
+        ByteBuffer log = read(name);
+        int count = log.limit() / RECORD;
+        if (n < 0 || n >= count) {
+            throw error("Log of branch %s does not go back %d updates.",
+                    name, n);
+        }
+        return id(log, (count - 1 - n) * RECORD + UID_BYTES);
+    }
+
+    /** Returns the commit ID named by REF: if REF has the form
+     *  BRANCH@{N}, the head BRANCH had N updates ago, and otherwise REF
+     *  itself. */
+    static String resolve(String ref) {
+        Matcher matcher = REF.matcher(ref);
+        if (!matcher.matches()) {
+            return ref;
+        } else if (!Branch.exists(matcher.group(1))) {
+            throw error("A branch with that name does not exist.");
+        }
+        return headAt(matcher.group(1), Integer.parseInt(matcher.group(2)));
+    }
+
+    /** Prints the log of the branch NAME, most recent update first. */
+    static void print(String name) {
+        ByteBuffer log = read(name);
+        int count = log.limit() / RECORD;
+        for (int i = 0; i < count; i += 1) {
+            int start = (count - 1 - i) * RECORD;
+            String time = Instant.ofEpochMilli(
+                    log.getLong(start + 2 * UID_BYTES))
+                .atZone(ZoneId.systemDefault())
+                .format(Commit.getFormat());
+            byte[] command = new byte[COMMAND];
+            log.position(start + 2 * UID_BYTES + Long.BYTES);
+            log.get(command);
+            int length = 0;
+            while (length < COMMAND && command[length] != 0) {
+                length += 1;
+            }
+            System.out.printf("%.8s %s@{%d}: %s: %s%n",
+                    id(log, start + UID_BYTES), name, i, time,
+                    new String(command, 0, length, StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Returns the log of the branch NAME. */
+    private static ByteBuffer read(String name) {
+        File file = join(LOGSDIR, name);
+        if (!file.exists()) {
+            throw error("No log for branch %s.", name);
+        }
+        return mapContents(file);
+    }
+
+    /** Returns the hexadecimal form of the ID at offset START in LOG. */
+    private static String id(ByteBuffer log, int start) {
+        byte[] raw = new byte[UID_BYTES];
+        log.position(start);
+        log.get(raw);
+        return ObjectId.fromBytes(raw).toString();
+    }
+
+    /** Matches a reference to an earlier head of a branch. */
+    private static final Pattern REF =
+        Pattern.compile("(.+)@\\{(\\d{1,9})\\}");
+
+    /** The path to the logs of this repository's branches. */
+    static final String LOGSDIR = ".gitlet/Logs";
+
+    /** The length of an ID in bytes. */
+    private static final int UID_BYTES = 20;
+
+    /** The most bytes of a command that are recorded. */
+    private static final int COMMAND = 48;
+
+    /** The length of a record: two IDs, a time and a command. */
+    private static final int RECORD = 2 * UID_BYTES + Long.BYTES + COMMAND;
+
+    /** The old head recorded for a new branch. */
+    private static final ObjectId NONE =
+        ObjectId.fromBytes(new byte[UID_BYTES]);
+
+    /** The key of the command making branch updates in each
+     *  repository. */
+    private static final RepoContext.Key<String> RUNNING =
+        new RepoContext.Key<>();
+
+}
@@ -0,0 +1,134 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The packed refs of a repository: the heads of branches and the values
+ *  of tags, consolidated into the single sorted text file
+ *  Objects/packed-refs so that thousands of refs are read at once. Each
+ *  line is a ref name ("heads/BRANCH" or "tags/TAG"), a tab and the ref's
+ *  value. A loose ref, stored in a file of its own, takes precedence over
+ *  a packed ref of the same name; refs are written loose and moved into
+ *  the packed file by pack().
+ *  @author Jack Mango */
+class Refs {
+
+    /** Returns the packed refs of the repository whose .gitlet directory
+     *  is DIR. */
+    static Refs load(File dir) {
+        Refs result = new Refs(join(dir, "Objects", "packed-refs"));
+        if (result._file.exists()) {
+            for (String line : readContentsAsString(result._file)
+                     .split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    result._refs.put(line.substring(0, tab),
+                            line.substring(tab + 1));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the packed refs of this repository. */
+    static Refs local() {
+        return load(join(GITLETDIR));
+    }
+
+    /** The packed refs stored in FILE. */
+    private Refs(File file) {
+        _file = file;
+    }
+
+    /** Returns the value of the packed ref NAME, or null if there is
+     *  none. */
+    String get(String name) {
+        return _refs.get(name);
+    }
+
+    /** Returns the names of the packed refs beginning with PREFIX, with
+     *  PREFIX removed, in order. */
+    List<String> names(String prefix) {
+        List<String> result = new ArrayList<>();
+        for (String name : under(prefix).keySet()) {
+            result.add(name.substring(prefix.length()));
+        }
+        return result;
+    }
+
+    /** Removes the packed ref NAME, if there is one, from this
+     *  repository's packed refs. */
+    static void remove(String name) {
+        File file = join(PACKED);
+        try (LockFile lock = LockFile.acquire(file)) {
+            Refs refs = local();
+            if (refs._refs.remove(name) != null) {
+                lock.commit(refs.text());
+            }
+        }
+    }
+
+    /** Moves every loose branch and tag of this repository into its packed
+     *  refs. A loose ref that changes while this is done is left loose. */
+    static void pack() {
+        Map<String, String> loose = new TreeMap<>();
+        for (String name : Branch.looseNames()) {
+            loose.put(HEADS + name, Branch.read(name).getHead());
+        }
+        for (String name : Tag.looseNames()) {
+            loose.put(TAGS + name, Tag.read(name).value());
+        }
+        File file = join(PACKED);
+        try (LockFile lock = LockFile.acquire(file)) {
+            Refs refs = local();
+            refs._refs.putAll(loose);
+            lock.commit(refs.text());
+        }
+        for (Map.Entry<String, String> entry : loose.entrySet()) {
+            String name = entry.getKey();
+            if (name.startsWith(HEADS)) {
+                Branch.unloose(name.substring(HEADS.length()),
+                        entry.getValue());
+            } else {
+                Tag.unloose(name.substring(TAGS.length()), entry.getValue());
+            }
+        }
+    }
+
+    /** Returns the refs beginning with PREFIX. */
+    private SortedMap<String, String> under(String prefix) {
+        return _refs.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    /** Returns the contents of the packed-refs file holding these refs. */
+    private String text() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, String> entry : _refs.entrySet()) {
+            result.append(entry.getKey()).append('\t')
+                .append(entry.getValue()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** The prefix of the names of packed branches. */
+    static final String HEADS = "heads/";
+
+    /** The prefix of the names of packed tags. */
+    static final String TAGS = "tags/";
+
+    /** The path to this repository's packed refs. */
+    static final String PACKED = ".gitlet/Objects/packed-refs";
+
+    /** The file holding these refs. */
+    private final File _file;
+
+    /** The values of the refs, by name. */
+    private final TreeMap<String, String> _refs = new TreeMap<>();
+
+}
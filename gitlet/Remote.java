@@ -0,0 +1,356 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** A named reference to another gitlet repository on the local file
+ *  system. History moves between repositories as packs: the sender works
+ *  out which commits the receiver lacks, from reachability bitmaps when
+ *  pushing onto an existing branch and otherwise by walking back from the
+ *  commit the receiver wants until it reaches commits the receiver already
+ *  has, and bundles the missing commits and blobs into a single pack in
+ *  the receiver's pack directory. The commits are then added to the
+ *  receiver's commit graph and commit times, parents first, as if they
+ *  had been made there.
+ *  @author Jack Mango */
+class Remote {
+
+    /** A remote named NAME whose .gitlet directory is DIR. */
+    private Remote(String name, File dir) {
+        _name = name;
+        _dir = dir;
+    }
+
+    /** Returns the configured remotes: a map from names to the paths of
+     *  their .gitlet directories. */
+    static TreeMap<String, String> all() {
+        TreeMap<String, String> result = new TreeMap<>();
+        File file = join(REMOTES);
+        if (file.exists()) {
+            for (String line : readContentsAsString(file).split("\n")) {
+                if (!line.isEmpty()) {
+                    String[] fields = line.split("\t", 2);
+                    result.put(fields[0], fields[1]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Stores REMOTES as the configured remotes. */
+    private static void saveAll(TreeMap<String, String> remotes) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, String> entry : remotes.entrySet()) {
+            out.append(entry.getKey()).append('\t')
+                .append(entry.getValue()).append('\n');
+        }
+        try (LockFile lock = LockFile.acquire(join(REMOTES))) {
+            lock.commit(out.toString());
+        }
+    }
+
+    /** Records a remote named NAME whose .gitlet directory is at PATH, using
+     *  "/" as the separator. */
+    static void add(String name, String path) {
+        TreeMap<String, String> remotes = all();
+        if (remotes.containsKey(name)) {
+            throw error("A remote with that name already exists.");
+        }
+        remotes.put(name, path.replace("/", File.separator));
+        saveAll(remotes);
+    }
+
+    /** Forgets the remote named NAME. */
+    static void remove(String name) {
+        TreeMap<String, String> remotes = all();
+        if (remotes.remove(name) == null) {
+            throw error("A remote with that name does not exist.");
+        }
+        saveAll(remotes);
+    }
+
+    /** Returns the remote named NAME, whose directory must exist. */
+    static Remote get(String name) {
+        String path = all().get(name);
+        if (path == null) {
+            throw error("A remote with that name does not exist.");
+        }
+        File dir = new File(path);
+        if (!dir.isDirectory()) {
+            throw error("Remote directory not found.");
+        }
+        return new Remote(name, dir);
+    }
+
+    /** Appends the history of the current head of the local repository to
+     *  BRANCH in this remote, creating it if needed. The remote branch must
+     *  not have commits that the local head lacks. */
+    void push(Commit head, String branch) {
+        Branch remoteBranch = Branch.readFrom(_dir, branch);
+        Store local = Store.local();
+        Store remote = new Store(_dir);
+        if (remoteBranch == null) {
+            transfer(local, remote, head.getID());
+            remoteBranch = new Branch(branch, head);
+        } else {
+            Bitmaps bitmaps = Bitmaps.load();
+            if (!bitmaps.isAncestor(remoteBranch.getHead(), head.getID())) {
+                throw error("Please pull down remote changes before"
+                        + " pushing.");
+            }
+            send(local, remote,
+                    bitmaps.missing(head.getID(), remoteBranch.getHead()));
+        }
+        remoteBranch.setHead(head.getID());
+        remoteBranch.saveTo(_dir);
+    }
+
+    /** Copies the history of BRANCH in this remote into the local
+     *  repository, as the local branch REMOTE/BRANCH. */
+    void fetch(String branch) {
+        Branch remoteBranch = Branch.readFrom(_dir, branch);
+        if (remoteBranch == null) {
+            throw error("That remote does not have that branch.");
+        }
+        String head = remoteBranch.getHead();
+        transfer(new Store(_dir), Store.local(), head);
+        String name = _name + "/" + branch;
+        Branch local;
+        if (Branch.exists(name)) {
+            local = Branch.read(name);
+            local.setHead(head);
+        } else {
+            local = new Branch(name, getCommit(head));
+        }
+        local.save();
+    }
+
+    /** Copies WANT and every commit and blob reachable from it that TARGET
+     *  lacks from SOURCE into a single new pack in TARGET. The walk stops at
+     *  commits TARGET already has, since it must then have their history
+     *  as well. */
+    private static void transfer(Store source, Store target, String want) {
+        List<String> commits = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(want);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            String key = commitKey(id);
+            if (seen.add(id) && !target.has(key) && source.has(key)) {
+                commits.add(id);
+                queue.addAll(source.commit(id).declaredParentIds());
+            }
+        }
+        send(source, target, commits);
+    }
+
+    /** Copies the COMMITS that TARGET lacks, and the blobs they use that
+     *  TARGET lacks, from SOURCE into a single new pack in TARGET, and
+     *  records the copied commits in TARGET. */
+    private static void send(Store source, Store target,
+                             Collection<String> commits) {
+        File dest = join(target._root, "Packs",
+                "pack-" + System.currentTimeMillis() + Pack.SUFFIX);
+        Map<String, Commit> copied = new LinkedHashMap<>();
+        try (Pack.Writer pack = new Pack.Writer(dest)) {
+            for (String id : commits) {
+                String key = commitKey(id);
+                if (target.has(key) || !source.has(key)) {
+                    continue;
+                }
+                source.copy(key, pack);
+                Commit commit = source.commit(id);
+                copied.put(id, commit);
+                for (String blob : commit.hashes()) {
+                    String blobKey = "Blobs/" + blob;
+                    if (!pack.contains(blobKey) && !target.has(blobKey)) {
+                        source.copy(blobKey, pack);
+                    }
+                }
+            }
+            if (pack.size() > 0) {
+                pack.finish();
+            }
+        }
+        if (!copied.isEmpty()) {
+            target._context.run(() -> record(copied));
+        }
+    }
+
+    /** Appends records for COMMITS, a map from IDs to commits just copied
+     *  into the current repository, to its commit graph and commit times.
+     *  The commits they were copied onto are recorded first if they lack
+     *  records, and each commit is recorded after its parents. */
+    private static void record(Map<String, Commit> commits) {
+        CommitGraph graph = CommitGraph.load();
+        List<CommitGraph.Entry> entries = new ArrayList<>();
+        Map<String, Long> times = new LinkedHashMap<>();
+        for (Commit commit : parentsFirst(commits)) {
+            List<String> parents = commit.parentIds();
+            for (String parent : parents) {
+                if (!commits.containsKey(parent)) {
+                    graph.ensure(parent);
+                }
+            }
+            Commit first = null;
+            if (!parents.isEmpty()) {
+                first = commits.containsKey(parents.get(0))
+                    ? commits.get(parents.get(0)) : getCommit(parents.get(0));
+            }
+            entries.add(CommitGraph.entryFor(commit, parents, first));
+            times.put(commit.getID(), commit.getTime());
+        }
+        CommitGraph.record(entries);
+        CommitTimes.record(times);
+    }
+
+    /** Returns the values of COMMITS, a map from IDs to commits, in an
+     *  order in which each comes after those of its parents that are
+     *  among them. */
+    private static List<Commit> parentsFirst(Map<String, Commit> commits) {
+        List<Commit> result = new ArrayList<>();
+        Set<String> visited = new HashSet<>(), done = new HashSet<>();
+        Deque<Commit> stack = new ArrayDeque<>();
+        for (Commit start : commits.values()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                Commit commit = stack.peek();
+                if (visited.add(commit.getID())) {
+                    for (String parent : commit.declaredParentIds()) {
+                        if (commits.containsKey(parent)
+                                && !visited.contains(parent)) {
+                            stack.push(commits.get(parent));
+                        }
+                    }
+                } else {
+                    stack.pop();
+                    if (done.add(commit.getID())) {
+                        result.add(commit);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the pack key of the commit COMMITID. */
+    private static String commitKey(String commitId) {
+        return String.format("Commits/%s/%s", commitId.substring(0, 2),
+                commitId.substring(2));
+    }
+
+    /** The objects of one repository, loose and packed. */
+    private static class Store {
+
+        /** The objects of the repository whose .gitlet directory is
+         *  ROOT. */
+        Store(File root) {
+            this(root, openPacks(root), RepoContext.open(
+                    root.getAbsoluteFile().getParentFile().toPath(),
+                    Paths.get("")));
+        }
+
+        /** The objects under ROOT, whose packs are PACKS, of the
+         *  repository in use through CONTEXT. */
+        private Store(File root, List<Pack> packs, RepoContext context) {
+            _root = root;
+            _packs = packs;
+            _context = context;
+        }
+
+        /** Returns the objects of the local repository. */
+        static Store local() {
+            return new Store(join(GITLETDIR), Pack.all(),
+                    RepoContext.current());
+        }
+
+        /** Returns the packs of the repository whose .gitlet directory is
+         *  ROOT. */
+        private static List<Pack> openPacks(File root) {
+            List<String> names = plainFilenamesIn(join(root, "Packs"));
+            if (names == null) {
+                return Collections.emptyList();
+            }
+            List<Pack> result = new ArrayList<>();
+            for (String name : names) {
+                if (name.endsWith(Pack.SUFFIX)) {
+                    result.add(new Pack(join(root, "Packs", name)));
+                }
+            }
+            return result;
+        }
+
+        /** Returns the loose file for the object with KEY. */
+        File loose(String key) {
+            return join(_root, key.split("/"));
+        }
+
+        /** Returns the pack holding the object with KEY, or null. */
+        Pack packOf(String key) {
+            for (Pack pack : _packs) {
+                if (pack.contains(key)) {
+                    return pack;
+                }
+            }
+            return null;
+        }
+
+        /** Returns true if this store holds the object with KEY. */
+        boolean has(String key) {
+            return loose(key).exists() || packOf(key) != null;
+        }
+
+        /** Returns the commit COMMITID from this store. */
+        Commit commit(String commitId) {
+            String key = commitKey(commitId);
+            File file = loose(key);
+            ByteBuffer buf = file.exists() ? mapContents(file)
+                    : packOf(key).get(key);
+            return readObject(buf, Commit.class);
+        }
+
+        /** Adds the object with KEY to PACK. */
+        void copy(String key, Pack.Writer pack) {
+            File file = loose(key);
+            if (file.exists()) {
+                pack.add(key, file);
+            } else {
+                pack.add(key, packOf(key));
+            }
+        }
+
+        /** The .gitlet directory of this repository. */
+        private final File _root;
+
+        /** The packs of this repository. */
+        private final List<Pack> _packs;
+
+        /** The repository, for use as the current one. */
+        private final RepoContext _context;
+    }
+
+    /** The path to the list of remotes. */
+    static final String REMOTES = ".gitlet/Objects/remotes";
+
+    /** The name of this remote. */
+    private final String _name;
+
+    /** The .gitlet directory of this remote. */
+    private final File _dir;
+
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Replays commits on top of other commits, for cherry-pick and rebase.
+ *  The change a commit made to its first parent is applied to a new base
+ *  by a three-way merge of their file trees that compares blob IDs only:
+ *  files the commit did not touch keep the new base's blobs, and no blob
+ *  is read except to write a conflict. Replayed commits are built and
+ *  stored without touching the working directory, which the caller
+ *  brings up to date once at the end.
+ *  @author Jack Mango */
+class Replay {
+
+    /** Returns a new commit on ONTO that makes the change COMMIT made to
+     *  its first parent, with COMMIT's message, or null if the change
+     *  leaves ONTO's files as they are. Files changed differently on both
+     *  sides are committed with conflict markers. The new commit is
+     *  stored. */
+    Commit apply(Commit onto, Commit commit) {
+        Map<String, ObjectId> base = commit.getParent() == null
+            ? Collections.emptyMap() : commit.getParent().tree();
+        Map<String, ObjectId> ours = onto.tree(), theirs = commit.tree();
+        TreeMap<String, ObjectId> result = new TreeMap<>(ours);
+        TreeSet<String> paths = new TreeSet<>(base.keySet());
+        paths.addAll(theirs.keySet());
+        for (String path : paths) {
+            ObjectId b = base.get(path), o = ours.get(path),
+                t = theirs.get(path);
+            if (Objects.equals(b, t) || Objects.equals(o, t)) {
+                continue;
+            } else if (Objects.equals(b, o)) {
+                if (t == null) {
+                    result.remove(path);
+                } else {
+                    result.put(path, t);
+                }
+            } else {
+                Blob conflict = new Blob(path, contents(path, o),
+                        contents(path, t));
+                writeObject(blobFile(conflict.getID()), conflict);
+                result.put(path, ObjectId.parse(conflict.getID()));
+                _conflict = true;
+            }
+        }
+        if (result.equals(ours)) {
+            return null;
+        }
+        Commit replayed = new Commit(commit.getMessage(), onto, result);
+        writeObject(commitFile(replayed.getID()), replayed);
+        CommitGraph.record(replayed);
+        CommitTimes.record(replayed);
+        return replayed;
+    }
+
+    /** Returns the commits reachable from HEAD that are not ancestors of
+     *  UPSTREAM, leaving out merge commits, in an order in which every
+     *  commit comes after its parents; the parents of a merge are visited
+     *  first parent first. The changes that reached HEAD through the second
+     *  parent of a merge are thereby replayed too, as if the history had
+     *  been linear. */
+    static List<Commit> range(Commit head, String upstream) {
+        Bitmaps bitmaps = Bitmaps.load();
+        List<Commit> result = new ArrayList<>();
+        HashSet<String> visited = new HashSet<>(), done = new HashSet<>();
+        ArrayDeque<Commit> stack = new ArrayDeque<>();
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            Commit commit = stack.peek();
+            if (visited.add(commit.getID())) {
+                List<String> parents = commit.parentIds();
+                for (int i = parents.size() - 1; i >= 0; i -= 1) {
+                    String parent = parents.get(i);
+                    if (!visited.contains(parent)
+                            && !bitmaps.isAncestor(parent, upstream)) {
+                        stack.push(getCommit(parent));
+                    }
+                }
+            } else {
+                stack.pop();
+                if (done.add(commit.getID())
+                        && commit.declaredParentIds().size() == 1) {
+                    result.add(commit);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if a conflict has been committed by this replay. */
+    boolean conflicted() {
+        return _conflict;
+    }
+
+    /** Returns a blob of PATH holding the contents of the blob BLOBID, or
+     *  an empty blob if BLOBID is null. */
+    private static Blob contents(String path, ObjectId blobId) {
+        return blobId == null ? new Blob(path, "")
+            : getBlob(blobId.toString());
+    }
+
+    /** True if a conflict has been committed. */
+    private boolean _conflict;
+
+}
@@ -0,0 +1,228 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static gitlet.Utils.*;
+
+/** A repository in use: where its files are kept, and what has been
+ *  learned about it while it is in use. Paths such as COMMITSDIR are
+ *  written as if every file were in the .gitlet directory of the current
+ *  working tree, and are resolved here; so are the names of working files,
+ *  which are relative to the top of the working tree, and the paths that
+ *  users give, which are relative to the directory a command was run in.
+ *
+ *  A repository may have several working trees: the first holds the
+ *  .gitlet directory with the objects, commit graph, branches and the
+ *  rest that all of them share, and each one added later holds only a
+ *  .gitlet file naming its own directory under .gitlet/Worktrees, which
+ *  keeps the state that belongs to one working tree, its active branch and
+ *  staging area among it. In the first working tree both directories are
+ *  the same.
+ *
+ *  Each thread has a current context, found from the process's working
+ *  directory unless another is set with run or call, and the caches of
+ *  the other classes are kept in it rather than in static fields, so that
+ *  one process may work on several repositories at once.
+ *  @author Jack Mango */
+class RepoContext {
+
+    /** A context for the working tree whose top directory is TOP, used
+     *  from the directory PREFIX beneath it, whose shared files are in
+     *  COMMONDIR and whose own files are in STATEDIR. */
+    private RepoContext(Path top, Path prefix, Path commonDir,
+                        Path stateDir) {
+        _top = top;
+        _prefix = prefix;
+        _commonDir = commonDir;
+        _stateDir = stateDir;
+    }
+
+    /** Returns the current context of this thread, first finding it from
+     *  the working directory of the process if there is none. */
+    static RepoContext current() {
+        RepoContext result = CURRENT.get();
+        if (result == null) {
+            result = discover(Paths.get(""));
+            CURRENT.set(result);
+        }
+        return result;
+    }
+
+    /** Returns the context of the working tree containing the directory
+     *  START: the nearest directory at or above START that has a .gitlet
+     *  directory or file, or START itself if there is none. The paths of
+     *  the context are relative if START is. */
+    static RepoContext discover(Path start) {
+        Path from = start.toAbsolutePath().normalize();
+        for (Path dir = from; dir != null; dir = dir.getParent()) {
+            if (Files.exists(dir.resolve(GITLETDIR))) {
+                return open(start.resolve(from.relativize(dir)).normalize(),
+                        dir.relativize(from));
+            }
+        }
+        return open(start, Paths.get(""));
+    }
+
+    /** Returns the context of the working tree whose top directory is TOP,
+     *  used from the directory PREFIX beneath it. */
+    static RepoContext open(Path top, Path prefix) {
+        Path gitlet = top.resolve(GITLETDIR);
+        if (!Files.isRegularFile(gitlet)) {
+            return new RepoContext(top, prefix, gitlet, gitlet);
+        }
+        String link = readContentsAsString(gitlet.toFile()).trim();
+        if (!link.startsWith(LINK)) {
+            throw error("Not in an initialized Gitlet directory.");
+        }
+        return linked(top, prefix, Paths.get(link.substring(LINK.length())));
+    }
+
+    /** Returns the context of the working tree added later whose top
+     *  directory is TOP, used from the directory PREFIX beneath it, and
+     *  whose own files are in STATEDIR, a directory under
+     *  WORKTREESDIR. */
+    static RepoContext linked(Path top, Path prefix, Path stateDir) {
+        return new RepoContext(top, prefix,
+                stateDir.getParent().getParent(), stateDir);
+    }
+
+    /** Returns the text of the .gitlet file of a working tree whose own
+     *  files are in STATEDIR. */
+    static String link(Path stateDir) {
+        return LINK + stateDir.toAbsolutePath().normalize() + "\n";
+    }
+
+    /** Runs BODY with this as the current context of this thread. */
+    void run(Runnable body) {
+        call(() -> {
+            body.run();
+            return null;
+        });
+    }
+
+    /** Returns the result of BODY, run with this as the current context of
+     *  this thread. */
+    <T> T call(Supplier<T> body) {
+        RepoContext saved = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return body.get();
+        } finally {
+            CURRENT.set(saved);
+        }
+    }
+
+    /** Returns the file at PATH, which is GITLETDIR or a path beneath it. */
+    File file(Path path) {
+        Path rel = Paths.get(GITLETDIR).relativize(path);
+        if (rel.toString().isEmpty()) {
+            return _commonDir.toFile();
+        }
+        for (String own : OWN) {
+            if (rel.startsWith(own)) {
+                return _stateDir.resolve(rel).toFile();
+            }
+        }
+        return _commonDir.resolve(rel).toFile();
+    }
+
+    /** Returns the file at PATH, as for file(Path). */
+    File file(String path) {
+        return file(Paths.get(path));
+    }
+
+    /** Returns the working file NAME, which is relative to the top of the
+     *  working tree. The empty NAME is the top itself. */
+    File workFile(String name) {
+        Path result = _top.resolve(name);
+        return result.toString().isEmpty() ? new File(".") : result.toFile();
+    }
+
+    /** Returns the name, relative to the top of the working tree, of the
+     *  file at PATH, which is relative to the directory the command was run
+     *  in and may be a glob pattern. */
+    String name(String path) {
+        Path result = _prefix.resolve(path).normalize();
+        if (result.startsWith("..")) {
+            throw error("%s is outside the repository.", path);
+        }
+        return result.toString();
+    }
+
+    /** Returns the top directory of the working tree. */
+    Path top() {
+        return _top;
+    }
+
+    /** Returns the directory holding the files shared by every working
+     *  tree. */
+    Path commonDir() {
+        return _commonDir;
+    }
+
+    /** Returns the directory holding the files of this working tree
+     *  alone. */
+    Path stateDir() {
+        return _stateDir;
+    }
+
+    /** Returns what is kept in this context under KEY, or null if
+     *  nothing is. */
+    @SuppressWarnings("unchecked")
+    <T> T get(Key<T> key) {
+        return (T) _kept.get(key);
+    }
+
+    /** Keeps VALUE in this context under KEY, or forgets what is kept
+     *  there if VALUE is null. */
+    <T> void put(Key<T> key, T value) {
+        if (value == null) {
+            _kept.remove(key);
+        } else {
+            _kept.put(key, value);
+        }
+    }
+
+    /** The name under which a class keeps something of type T, such as a
+     *  cache, in each context. */
+    static final class Key<T> {
+    }
+
+    /** The paths, relative to the .gitlet directory, of the files that each
+     *  working tree has for itself. */
+    static final List<String> OWN = List.of(
+        "Objects/repoObj", "Objects/stgObj", "Objects/stage",
+        "Objects/sparse", "Objects/bisect", "watch");
+
+    /** What precedes the path of a working tree's own directory in its
+     *  .gitlet file. */
+    private static final String LINK = "gitdir: ";
+
+    /** The current context of each thread. */
+    private static final ThreadLocal<RepoContext> CURRENT =
+        new ThreadLocal<>();
+
+    /** The top directory of the working tree. */
+    private final Path _top;
+
+    /** The directory the command was run in, relative to _top. */
+    private final Path _prefix;
+
+    /** The directory of the files shared by every working tree. */
+    private final Path _commonDir;
+
+    /** The directory of the files of this working tree alone. */
+    private final Path _stateDir;
+
+    /** What the other classes keep in this context, by key. */
+    private final Map<Key<?>, Object> _kept =
+        new ConcurrentHashMap<>();
+
+}
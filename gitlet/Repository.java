@@ -1,9 +1,32 @@
 package gitlet;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static gitlet.Utils.*;
 
@@ -17,15 +40,22 @@ public class Repository implements Serializable {
     public Repository() {
         _active = "master";
 
-        join(".", ".gitlet/Blobs").mkdir();
-        join(".", ".gitlet/Branches").mkdir();
-        join(".", ".gitlet/Commits").mkdir();
+        join(BLOBSDIR).mkdir();
+        join(BRANCHESDIR).mkdir();
+        join(COMMITSDIR).mkdir();
+        join(PACKSDIR).mkdir();
         for (int i = 0; i < 256; i++) {
             join(COMMITSDIR, twoHex(i)).mkdir();
         }
         initObjects();
     }
 
+    /** A repository object for a working tree of an existing repository,
+     *  with ACTIVE as its active branch. */
+    Repository(String active) {
+        _active = active;
+    }
+
     /** Adds a copy of the FILE as it currently exists to the staging area.
      *  Staging an already-staged file overwrites the previous entry in the
      *  staging area with the new contents. If the current working version of
@@ -34,26 +64,107 @@ public class Repository implements Serializable {
      *  already there. The file will no longer be staged for removal
      *  (see gitlet rm), if it was at the time of the command. */
     public void add(String file) {
-        StagingArea stg = readObject(new File(STGOBJ), StagingArea.class);
+        add(Collections.singletonList(file));
+    }
+
+    /** Adds every file named by PATHS, as for add(String). Each path may be a
+     *  file, a directory (whose files are added recursively) or a glob
+     *  pattern. The files are read and hashed in parallel, and the staging
+     *  area is loaded and saved once for the whole batch. */
+    public void add(List<String> paths) {
+        List<String> files = workingFiles(paths);
+        StagingArea stg = StagingArea.load();
         Commit commit = lastCommit();
-        File f = new File(file);
-        if (!f.exists()) {
-            throw error("File does not exist.");
+        if (Monitor.running()) {
+            files.removeIf(f -> alreadyRecorded(f, stg, commit));
         }
-        Blob blob = new Blob(file, readContentsAsString(f));
-        if (!stg.addContains(file) && !commit.trackingHash(blob.getID())) {
-            stg.stgAddition(blob);
-        } else if (stg.addContains(file)
-                && !commit.trackingHash(blob.getID())) {
-            join(BLOBSDIR, stg.additionGetID(file)).delete();
-            stg.stgAddition(blob);
-        } else if (stg.addContains(file) && commit.trackingHash(blob.getID())) {
-            stg.unstgAddition(file);
-        } else {
-            stg.unstgRemoval(blob.getFilename());
+        RepoContext context = RepoContext.current();
+        List<Blob> blobs = files.parallelStream()
+                .map(f -> new Blob(f,
+                        readContentsAsString(context.workFile(f))))
+                .collect(Collectors.toList());
+        for (Blob blob : blobs) {
+            String file = blob.getFilename();
+            if (!stg.addContains(file) && !commit.trackingHash(blob.getID())) {
+                stg.stgAddition(blob);
+            } else if (stg.addContains(file)
+                    && !commit.trackingHash(blob.getID())) {
+                StagingArea.discard(stg.additionGetID(file));
+                stg.stgAddition(blob);
+            } else if (stg.addContains(file)
+                    && commit.trackingHash(blob.getID())) {
+                stg.unstgAddition(file);
+            } else {
+                stg.unstgRemoval(file);
+            }
+        }
+        stg.save();
+    }
+
+    /** Returns true if the working FILE, whose ID is known to the running
+     *  monitor, is already staged as it is or is unchanged from COMMIT, so
+     *  that adding it need only take it off STG's removal list and it need
+     *  not be read. */
+    private static boolean alreadyRecorded(String file, StagingArea stg,
+                                           Commit commit) {
+        String id = Monitor.hashOf(file);
+        boolean same = stg.addContains(file)
+            ? stg.additionGetID(file).equals(id) : commit.trackingHash(id);
+        if (same) {
+            stg.unstgRemoval(file);
         }
-        writeObject(join(STGOBJ), stg);
-        writeObject(join(commitFile(commit.getID())), commit);
+        return same;
+    }
+
+    /** Returns the working files named by PATHS, which are relative to the
+     *  top of the working tree, in order and without duplicates. A
+     *  directory stands for every plain file beneath it, and a glob pattern
+     *  for every plain file in the working tree that it matches. The
+     *  .gitlet directory is never included. */
+    private List<String> workingFiles(List<String> paths) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String path : paths) {
+            File f = workFile(path);
+            if (isGlob(path)) {
+                PathMatcher matcher =
+                    FileSystems.getDefault().getPathMatcher("glob:" + path);
+                List<String> matched = walkFiles("");
+                matched.removeIf(name -> !matcher.matches(Paths.get(name)));
+                if (matched.isEmpty()) {
+                    throw error("File does not exist.");
+                }
+                result.addAll(matched);
+            } else if (f.isDirectory()) {
+                result.addAll(walkFiles(path));
+            } else if (f.exists()) {
+                result.add(Paths.get(path).normalize().toString());
+            } else {
+                throw error("File does not exist.");
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Returns the normalized names of the plain files beneath the working
+     *  directory NAME, in lexicographic order, skipping anything inside
+     *  .gitlet. */
+    private static List<String> walkFiles(String name) {
+        Path dir = workFile(name).toPath();
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(p -> Paths.get(name).resolve(dir.relativize(p))
+                         .normalize())
+                    .filter(p -> !p.startsWith(GITLETDIR))
+                    .map(Path::toString).sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException excp) {
+            throw error("Could not read directory %s.", dir);
+        }
+    }
+
+    /** Returns true iff PATH contains glob metacharacters. */
+    private static boolean isGlob(String path) {
+        return path.matches(".*[*?\\[{].*");
     }
 
     /** Generates the initial commit, staging area, and master branch
@@ -64,55 +175,108 @@ public class Repository implements Serializable {
         StagingArea stg = new StagingArea();
         master.setHead(initial.getID());
         writeObject(commitFile(initial.getID()), initial);
-        writeObject(join(BRANCHESDIR, master.getName()), master);
-        writeObject(new File(STGOBJ), stg);
+        CommitGraph.record(initial);
+        CommitTimes.record(initial);
+        master.save();
+        stg.save();
     }
 
     /** Returns the active branch Object. */
     public Branch getActive() {
-        return readObject(join(BRANCHESDIR, _active), Branch.class);
+        return Branch.read(_active);
     }
 
     /** Returns the most recent commit from the active branch. */
     public Commit lastCommit() {
         Branch active = getActive();
-        return readObject(commitFile(active.getHead()), Commit.class);
+        return getCommit(active.getHead());
     }
 
     /** Creates a new commit object with MESSAGE that tracks all the files
      *  currently in the staging area, while removing tracking from any files
      *  that were removed. */
     public void commit(String message) {
-        StagingArea stg = readObject(new File(STGOBJ), StagingArea.class);
+        StagingArea stg = StagingArea.load();
         if (stg.additionDump().isEmpty() && stg.removalDump().isEmpty()) {
             throw error("No changes added to the commit.");
         } else {
-            Commit newCommit = new Commit(message, lastCommit());
-            Branch activeBranch = readObject(join(BRANCHESDIR, _active),
-                    Branch.class);
+            Branch activeBranch = getActive();
+            Commit newCommit =
+                new Commit(message, getCommit(activeBranch.getHead()));
             newCommit.updateTracking(stg);
             activeBranch.setHead(newCommit.getID());
             writeObject(commitFile(newCommit.getID()), newCommit);
-            writeObject(join(BRANCHESDIR, _active), activeBranch);
-            writeObject(new File(STGOBJ), new StagingArea());
+            CommitGraph.record(newCommit);
+            CommitTimes.record(newCommit);
+            activeBranch.save();
+            stg.clearCommitted();
         }
     }
 
     /** Removes the FILE from the collection of files that the next commit will
      *  track, and deletes it from the working directory. */
     public void remove(String file) {
-        StagingArea stg = readObject(new File(STGOBJ), StagingArea.class);
+        remove(Collections.singletonList(file));
+    }
+
+    /** Removes every file named by PATHS, as for remove(String). A directory
+     *  or glob pattern stands for the files under it or matching it that are
+     *  staged or tracked by the head commit. The staging area is loaded and
+     *  saved once for the whole batch. */
+    public void remove(List<String> paths) {
+        StagingArea stg = StagingArea.load();
         Commit headCommit = lastCommit();
-        if (!stg.addContains(file) && !headCommit.tracking(file)) {
-            throw error("No reason to remove the file.");
-        } else if (stg.addContains(file)) {
-            stg.unstgAddition(file);
+        TreeSet<String> known = new TreeSet<>(stg.additionDump());
+        known.addAll(headCommit.filenames());
+        List<String> files = trackedFiles(paths, known);
+        for (String file : files) {
+            if (!known.contains(file)) {
+                throw error("No reason to remove the file.");
+            }
         }
-        if (headCommit.tracking(file)) {
-            stg.stgRemoval(file);
-            restrictedDelete(file);
+        for (String file : files) {
+            if (stg.addContains(file)) {
+                stg.unstgAddition(file);
+            }
+            if (headCommit.tracking(file)) {
+                stg.stgRemoval(file);
+                restrictedDelete(file);
+            }
         }
-        writeObject(new File(STGOBJ), stg);
+        stg.save();
+    }
+
+    /** Returns the names among KNOWN that are named by PATHS, where a path
+     *  may also be a directory prefix or a glob pattern. A plain path that
+     *  names nothing in KNOWN is returned as is. */
+    private List<String> trackedFiles(List<String> paths,
+                                      TreeSet<String> known) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (String path : paths) {
+            String name = Paths.get(path).normalize().toString();
+            if (isGlob(path)) {
+                PathMatcher matcher =
+                    FileSystems.getDefault().getPathMatcher("glob:" + path);
+                for (String file : known) {
+                    if (matcher.matches(Paths.get(file))) {
+                        result.add(file);
+                    }
+                }
+            } else if (name.isEmpty() || workFile(path).isDirectory()) {
+                for (String file : known) {
+                    if (name.isEmpty()
+                            || Paths.get(file).startsWith(name)) {
+                        result.add(file);
+                    }
+                }
+            } else {
+                result.add(name);
+            }
+        }
+        if (result.isEmpty()) {
+            throw error("No reason to remove the file.");
+        }
+        return new ArrayList<>(result);
     }
 
     /** Prints out the log of all commits on the currently active branch this
@@ -130,17 +294,78 @@ public class Repository implements Serializable {
         System.out.println(output);
     }
 
-    /** Prints out the log of commits on all branches in this repository. */
-    public void globalLog() {
-        Formatter output = new Formatter();
-        for (int i = 0; i < 256; i++) {
-            String dir = twoHex(i);
-            for (String commitId : plainFilenamesIn(join(COMMITSDIR, dir))) {
-                Commit commit = readObject(join(COMMITSDIR, dir, commitId),
-                        Commit.class);
-                output.format(commit.toString() + "\n\n");
+    /** Prints out the log of the commits on the currently active branch
+     *  that changed PATH, or any file beneath it if it is a directory; the
+     *  top of the working tree is the directory holding every file.
+     *  Commits whose changed-path filters rule PATH out are skipped without
+     *  being read. */
+    public void log(String path) {
+        String name = Paths.get(path).normalize().toString()
+                .replace(File.separatorChar, '/');
+        CommitGraph graph = CommitGraph.load();
+        String id = getActive().getHead();
+        graph.ensure(id);
+        List<String> entries = new ArrayList<>();
+        for (CommitGraph.Entry entry = graph.get(id); entry != null;
+             entry = graph.get(entry.firstParent())) {
+            if (entry.mayChange(name)) {
+                Commit commit = getCommit(entry.getID().toString());
+                Commit parent = commit.getParent();
+                if (CommitGraph.touches(
+                        CommitGraph.changedPaths(commit, parent), name)) {
+                    entries.add(commit.toString());
+                }
+            }
+            if (entry.firstParent() == null) {
+                break;
             }
+        }
+        System.out.println(String.join("\n\n", entries));
+    }
 
+    /** Prints out the log of the commits on the currently active branch
+     *  made no earlier than SINCE and no later than UNTIL, in milliseconds
+     *  since the epoch. Commits outside that range are skipped without
+     *  being read. */
+    public void log(long since, long until) {
+        CommitGraph graph = CommitGraph.load();
+        String id = getActive().getHead();
+        graph.ensure(id);
+        List<String> chain = new ArrayList<>();
+        for (CommitGraph.Entry entry = graph.get(id); entry != null;
+             entry = graph.get(entry.firstParent())) {
+            chain.add(entry.getID().toString());
+            if (entry.firstParent() == null) {
+                break;
+            }
+        }
+        CommitTimes times = CommitTimes.load();
+        times.ensure(chain);
+        List<String> entries = new ArrayList<>();
+        for (String commitId : chain) {
+            long time = times.get(commitId);
+            if (time >= since && time <= until) {
+                entries.add(getCommit(commitId).toString());
+            }
+        }
+        System.out.println(String.join("\n\n", entries));
+    }
+
+    /** Prints out the log of commits on all branches in this repository,
+     *  newest first. */
+    public void globalLog() {
+        globalLog(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** Prints out the log of the commits in this repository made no
+     *  earlier than SINCE and no later than UNTIL, in milliseconds since
+     *  the epoch, newest first. */
+    public void globalLog(long since, long until) {
+        Formatter output = new Formatter();
+        for (String commitId
+                 : CommitTimes.load().newestFirst(allCommitIds(), since,
+                         until)) {
+            output.format("%s\n\n", getCommit(commitId));
         }
         System.out.println(output);
     }
@@ -148,14 +373,10 @@ public class Repository implements Serializable {
     /** Prints out all commit IDs that have this MESSAGE. */
     public void find(String message) {
         Formatter output = new Formatter();
-        for (int i = 0; i < 256; i++) {
-            String dir = twoHex(i);
-            for (String commitId : plainFilenamesIn(join(COMMITSDIR, dir))) {
-                Commit commit = readObject(join(COMMITSDIR, dir, commitId),
-                        Commit.class);
-                if (commit.getMessage().equals(message)) {
-                    output.format("%s\n", commit.getID());
-                }
+        for (String commitId : allCommitIds()) {
+            Commit commit = getCommit(commitId);
+            if (commit.getMessage().equals(message)) {
+                output.format("%s\n", commit.getID());
             }
         }
         if (output.toString().isEmpty()) {
@@ -169,11 +390,11 @@ public class Repository implements Serializable {
      *  with a *. Also displays what files have been staged for addition
      *  or removal. */
     public void status() {
-        StagingArea stg = readObject(new File(STGOBJ), StagingArea.class);
+        StagingArea stg = StagingArea.load();
         Commit last = lastCommit();
         Formatter output = new Formatter();
         output.format("=== Branches ===\n");
-        for (String branch : plainFilenamesIn(BRANCHESDIR)) {
+        for (String branch : Branch.names()) {
             if (branch.equals(_active)) {
                 output.format("*");
             }
@@ -203,20 +424,18 @@ public class Repository implements Serializable {
     /** Takes the version of the file named FILENAME as it exists in the
      *  commit corresponding to COMMITID and puts it in the working directory,
      *  overwriting the version of the file that's already there if there is
-     *  one. The new version of the file is not staged. */
+     *  one. The new version of the file is not staged. COMMITID may also be
+     *  a tag. */
     public void checkoutFile(String commitId, String filename) {
-        if (!commitFile(commitId).exists()) {
-            throw error("No commit with that id exists.");
-        }
-        Commit commit = readObject(commitFile(commitId), Commit.class);
-        StagingArea stg = readObject(new File(STGOBJ), StagingArea.class);
+        Commit commit = getCommit(resolve(commitId));
+        StagingArea stg = StagingArea.load();
         if (!commit.tracking(filename)) {
             throw error("File does not exist in that commit.");
         } else if (stg.addContains(filename)) {
             stg.unstgAddition(filename);
         }
         commit.checkout(commit.hashOf(filename));
-        writeObject(new File(STGOBJ), stg);
+        stg.save();
     }
 
     /** Takes all files in the commit at the head of the branch named BRANCHNAME
@@ -227,19 +446,20 @@ public class Repository implements Serializable {
      *  in the checked-out branch are deleted. The staging area is cleared,
      *  unless the checked-out branch is the current branch. */
     public void checkoutBranch(String branchName) {
-        if (!join(BRANCHESDIR, branchName).exists()) {
+        if (!Branch.exists(branchName)) {
             throw error("No such branch exists.");
         } else if (branchName.equals(_active)) {
             throw error("No need to checkout the current branch.");
         }
-        Branch branch = readObject(join(BRANCHESDIR, branchName), Branch.class);
-        Commit target = readObject(commitFile(branch.getHead()), Commit.class);
+        checkNotHeld(branchName);
+        Branch branch = Branch.read(branchName);
+        Commit target = getCommit(branch.getHead());
         if (target.inTheWay(lastCommit())) {
             throw error("There is an untracked file in the way;"
                     + " delete it, or add and commit it first.");
         } else {
             restore(target);
-            writeObject(new File(STGOBJ), new StagingArea());
+            new StagingArea().save();
             _active = branchName;
         }
     }
@@ -249,48 +469,61 @@ public class Repository implements Serializable {
      *  (a SHA-1 identifier) to a commit node. We don't immediately switch
      * to the newly created branch. */
     public void branch(String name) {
-        if (join(BRANCHESDIR, name).exists()) {
+        if (Branch.exists(name)) {
             throw error("A branch with that name already exists.");
         }
         Branch newBranch = new Branch(name, lastCommit());
-        writeObject(join(BRANCHESDIR, name), newBranch);
+        newBranch.save();
     }
 
     /** Deletes the branch with name BRANCHNAME. This only means to delete the
      *  pointer associated with the branch; it does not mean to delete all
      *  commits that were created under the branch, or anything like that.*/
     public void rmBranch(String branchName) {
-        if (!join(BRANCHESDIR, branchName).exists()) {
+        if (!Branch.exists(branchName)) {
             throw error("A branch with that name does not exist.");
         } else if (_active.equals(branchName)) {
             throw error("Cannot remove the current branch.");
         } else {
-            join(BRANCHESDIR, branchName).delete();
+            checkNotHeld(branchName);
+            Branch.delete(branchName);
         }
     }
 
     /** Checks out all the files tracked by the commit with corresponding
      *  COMMITID. Removes tracked files that are not present in that commit.
      *  Also moves the current branch's head to that commit node. The id
-     *  may be abbreviated as for checkout. The staging area is cleared.
+     *  may be abbreviated as for checkout, or may be a tag or BRANCH@{N},
+     *  the head BRANCH had N updates ago. The staging area is cleared.
      *  The command is essentially checkout of an arbitrary commit that also
      *  changes the current branch head.*/
     public void reset(String commitId) {
-        if (!commitFile(commitId).exists()) {
-            throw error("No commit with that id exists.");
-        }
-        Commit target = readObject(commitFile(commitId), Commit.class);
-        if (target.inTheWay(lastCommit())) {
+        String id = resolve(commitId);
+        Commit target = getCommit(id);
+        Branch branch = getActive();
+        Commit head = getCommit(branch.getHead());
+        if (target.inTheWay(head)) {
             throw error("There is an untracked file in the way;"
                     + " delete it, or add and commit it first.");
         }
-        restore(target);
-        writeObject(new File(STGOBJ), new StagingArea());
-        Branch branch = readObject(join(BRANCHESDIR, _active), Branch.class);
-        String id = commitFile(commitId).getParentFile().getName()
-                + commitFile(commitId).getName();
+        head.clearTracked();
+        target.checkoutAll();
+        new StagingArea().save();
         branch.setHead(id);
-        writeObject(join(BRANCHESDIR, _active), branch);
+        branch.save();
+    }
+
+    /** Returns the full ID of the commit named by REF, which may be a tag,
+     *  a branch, BRANCH@{N} or a commit ID, abbreviated as for checkout. */
+    private static String resolve(String ref) {
+        Tag tag = Tag.validName(ref) ? Tag.read(ref) : null;
+        String id = tag != null ? tag.getCommit()
+            : Branch.names().contains(ref) ? Branch.read(ref).getHead()
+            : Reflog.resolve(ref);
+        if (!hasCommit(id)) {
+            throw error("No commit with that id exists.");
+        }
+        return fullCommitId(id);
     }
 
     /** Given a COMMIT, clears working directory and places files
@@ -303,37 +536,40 @@ public class Repository implements Serializable {
     /** Merges files from the given OTHER branch into the current branch.
      *  See spec for full description. */
     public void merge(String other) {
-        if (!join(BRANCHESDIR, other).exists()) {
+        if (!Branch.exists(other)) {
             throw error("A branch with that name does not exist.");
         } else if (other.equals(_active)) {
             throw error("Cannot merge a branch with itself.");
         }
-        StagingArea stg = readObject(new File(STGOBJ), StagingArea.class);
-        Branch activeBranch = readObject(join(BRANCHESDIR, _active),
-                Branch.class);
-        Commit current = lastCommit();
-        Branch targetBranch = readObject(join(BRANCHESDIR, other),
-                Branch.class);
+        StagingArea stg = StagingArea.load();
+        Branch activeBranch = getActive();
+        Commit current = getCommit(activeBranch.getHead());
+        Branch targetBranch = Branch.read(other);
         Commit target = getCommit(targetBranch.getHead());
         if (stg.anyStaged()) {
             throw error("You have uncommitted changes.");
         }
-        Commit split = getCommit(activeBranch.commonAncestor(targetBranch));
+        Bitmaps bitmaps = Bitmaps.load();
         MergeCommit mergeCommit = new MergeCommit(activeBranch, targetBranch);
-        if (split.getID().equals(target.getID())) {
+        if (bitmaps.isAncestor(target.getID(), current.getID())) {
             System.out.println("Given branch is an ancestor of the current"
                     + " branch.");
             mergeCommit.updateTracking(current);
-        } else if (split.getID().equals(current.getID())) {
+        } else if (bitmaps.isAncestor(current.getID(), target.getID())) {
             mergeCommit.updateTracking(target);
-            restore(target);
+            current.clearTracked();
+            target.checkoutAll();
             System.out.println("Current branch fast-forwarded.");
         } else {
+            Commit split =
+                getCommit(activeBranch.commonAncestor(targetBranch));
             mergeCommit = mergeHelper(split, current, target, mergeCommit);
         }
         activeBranch.setHead(mergeCommit.getID()); mergeCommit.checkoutAll();
         writeObject(commitFile(mergeCommit.getID()), mergeCommit);
-        writeObject(join(BRANCHESDIR, activeBranch.getName()), activeBranch);
+        CommitGraph.record(mergeCommit);
+        CommitTimes.record(mergeCommit);
+        activeBranch.save();
     }
 
     /** This method is a helper for the merge method. Given the SPLIT, CURRENT,
@@ -341,9 +577,10 @@ public class Repository implements Serializable {
      * should be kept or deleted, and returns the finalized mergecommit. */
     public MergeCommit mergeHelper(Commit split, Commit current,
                                    Commit target, MergeCommit mergeCommit) {
-        ArrayList<File> toDelete = new ArrayList<>(); boolean conflict = false;
+        ArrayList<String> toDelete = new ArrayList<>();
+        boolean conflict = false;
         for (String hash : current.hashes()) {
-            Blob currBlob = readObject(join(BLOBSDIR, hash), Blob.class);
+            Blob currBlob = getBlob(hash);
             String file = currBlob.getFilename();
             if (target.modified(currBlob) && split.tracking(file)) {
                 mergeCommit.add(target.hashOf(file));
@@ -356,11 +593,11 @@ public class Repository implements Serializable {
             } else if (!split.tracking(file)) {
                 mergeCommit.add(hash);
             } else if (!target.tracking(file) && split.tracking(file)) {
-                toDelete.add(new File(file));
+                toDelete.add(file);
             }
         }
         for (String hash : target.hashes()) {
-            Blob targBlob = readObject(join(BLOBSDIR, hash), Blob.class);
+            Blob targBlob = getBlob(hash);
             String file = targBlob.getFilename();
             if (current.modified(targBlob) && split.tracking(file)) {
                 mergeCommit.add(current.hashOf(file));
@@ -369,7 +606,7 @@ public class Repository implements Serializable {
             }
         }
         for (String hash : split.hashes()) {
-            Blob blob = readObject(join(BLOBSDIR, hash), Blob.class);
+            Blob blob = getBlob(hash);
             String file = blob.getFilename();
             if (current.modified(blob) && target.modified(blob)) {
                 if (current.hashOf(file).equals(target.hashOf(file))) {
@@ -392,7 +629,7 @@ public class Repository implements Serializable {
                 writeObject(join(BLOBSDIR, conflictBlob.getID()), conflictBlob);
             }
         }
-        for (File file : toDelete) {
+        for (String file : toDelete) {
             restrictedDelete(file);
         }
         if (conflict) {
@@ -401,7 +638,528 @@ public class Repository implements Serializable {
         return mergeCommit;
     }
 
+    /** Applies the change made by the commit COMMITID to its first parent
+     *  on top of the head of the current branch, as a new commit with the
+     *  same message. The id may be abbreviated as for checkout. */
+    public void cherryPick(String commitId) {
+        Commit commit = getCommit(resolve(commitId));
+        if (commit.declaredParentIds().size() > 1) {
+            throw error("Cannot cherry-pick a merge commit.");
+        } else if (StagingArea.load().anyStaged()) {
+            throw error("You have uncommitted changes.");
+        }
+        Branch branch = getActive();
+        Commit head = getCommit(branch.getHead());
+        Replay replay = new Replay();
+        Commit picked = replay.apply(head, commit);
+        if (picked == null) {
+            throw error("No changes to cherry-pick.");
+        }
+        update(head, picked);
+        branch.setHead(picked.getID());
+        branch.save();
+        if (replay.conflicted()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Replays the commits of the current branch that are not on the branch
+     *  UPSTREAM on top of UPSTREAM's head, parents first, and moves the
+     *  current branch to the last of them. Commits merged into the branch
+     *  are replayed as well; merge commits themselves, and commits whose
+     *  changes are already present, are left out. The commits are replayed
+     *  in memory, and the working directory is updated once at the end. */
+    public void rebase(String upstream) {
+        if (!Branch.exists(upstream)) {
+            throw error("A branch with that name does not exist.");
+        } else if (upstream.equals(_active)) {
+            throw error("Cannot rebase a branch onto itself.");
+        } else if (StagingArea.load().anyStaged()) {
+            throw error("You have uncommitted changes.");
+        }
+        Branch branch = getActive();
+        Commit head = getCommit(branch.getHead());
+        Commit base = getCommit(Branch.read(upstream).getHead());
+        Bitmaps bitmaps = Bitmaps.load();
+        if (bitmaps.isAncestor(base.getID(), head.getID())) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+        boolean fastForward = bitmaps.isAncestor(head.getID(), base.getID());
+        Replay replay = new Replay();
+        Commit result = base;
+        if (!fastForward) {
+            for (Commit commit : Replay.range(head, base.getID())) {
+                Commit replayed = replay.apply(result, commit);
+                if (replayed != null) {
+                    result = replayed;
+                }
+            }
+        }
+        update(head, result);
+        branch.setHead(result.getID());
+        branch.save();
+        if (fastForward) {
+            System.out.println("Current branch fast-forwarded.");
+        } else if (replay.conflicted()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Carries out the bisect subcommand ACTION with operands ARGS. "start"
+     *  begins a search for the commit that introduced a bug; "bad", "good"
+     *  and "skip" mark the commit ARGS names (the one checked out by
+     *  default) and check out the next one to test; "run" marks commits by
+     *  the exit status of the command ARGS until the first bad commit is
+     *  found; "reset" ends the search and restores the head commit. Only
+     *  the files that differ are written at each step. */
+    public void bisect(String action, List<String> args) {
+        if (action.equals("start") && args.isEmpty()) {
+            if (StagingArea.load().anyStaged()) {
+                throw error("You have uncommitted changes.");
+            }
+            Bisect.start(lastCommit().getID());
+            return;
+        }
+        Bisect bisect = Bisect.load();
+        if (action.equals("reset") && args.isEmpty()) {
+            update(getCommit(bisect.at()), lastCommit());
+            Bisect.clear();
+        } else if (action.equals("run") && !args.isEmpty()) {
+            if (!bisect.ready()) {
+                throw error("Mark a bad and a good commit first.");
+            }
+            do {
+                bisect.mark(runTest(args), bisect.at());
+            } while (bisectStep(bisect));
+        } else if (Arrays.asList("bad", "good", "skip").contains(action)
+                   && args.size() <= 1) {
+            String id = bisect.at();
+            if (!args.isEmpty()) {
+                id = resolve(args.get(0));
+            }
+            bisect.mark(action, id);
+            if (bisect.ready()) {
+                bisectStep(bisect);
+            } else {
+                bisect.save();
+            }
+        } else {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Checks out the next commit BISECT should test and saves it.
+     *  Returns false if the first bad commit has been found instead. */
+    private boolean bisectStep(Bisect bisect) {
+        String next = bisect.next();
+        if (next != null) {
+            update(getCommit(bisect.at()), getCommit(next));
+            bisect.moveTo(next);
+        }
+        bisect.save();
+        return next != null;
+    }
+
+    /** Runs the command COMMAND on the checked-out files and returns what
+     *  its exit status says about them: 0 is "good", 125 is "skip" and any
+     *  other status below 128 is "bad". */
+    private static String runTest(List<String> command) {
+        int status;
+        try {
+            status = new ProcessBuilder(command).inheritIO().start()
+                .waitFor();
+        } catch (IOException | InterruptedException excp) {
+            throw error("Could not run %s.", command.get(0));
+        }
+        if (status == 0) {
+            return "good";
+        } else if (status == SKIP_STATUS) {
+            return "skip";
+        } else if (status < ABORT_STATUS) {
+            return "bad";
+        }
+        throw error("%s exited with status %d; stopping.", command.get(0),
+                status);
+    }
+
+    /** Brings the working directory from the files of FROM, the head
+     *  commit, to those of TO, writing and deleting only the files in which
+     *  they differ. Nothing is changed if that would overwrite an untracked
+     *  file or a file with changes that are not committed. */
+    private void update(Commit from, Commit to) {
+        TreeSet<String> paths = new TreeSet<>(from.filenames());
+        paths.addAll(to.filenames());
+        Map<String, String> changed = new LinkedHashMap<>();
+        List<String> deleted = new ArrayList<>();
+        for (String path : paths) {
+            String target = to.hashOf(path);
+            if (!Sparse.selects(path)
+                    || Objects.equals(target, from.hashOf(path))) {
+                continue;
+            }
+            String hash = Monitor.hashOf(path);
+            if (hash != null && !from.tracking(path)) {
+                throw error("There is an untracked file in the way;"
+                        + " delete it, or add and commit it first.");
+            } else if (!Objects.equals(hash, from.hashOf(path))) {
+                throw error("Your local changes to %s would be overwritten;"
+                        + " commit or stash them first.", path);
+            } else if (target == null) {
+                deleted.add(path);
+            } else {
+                changed.put(path, target);
+            }
+        }
+        for (String path : deleted) {
+            restrictedDelete(path);
+        }
+        Checkout.writeAll(changed);
+    }
+
+    /** Prints each line of FILE as of the head commit, preceded by the
+     *  abbreviated ID of the commit that introduced it and its line
+     *  number. */
+    public void blame(String file) {
+        Commit head = lastCommit();
+        if (!head.tracking(file)) {
+            throw error("File does not exist in that commit.");
+        }
+        String[] origins = Blame.origins(head, file);
+        String[] lines = getBlob(head.hashOf(file)).getContents()
+            .split("\n", -1);
+        String format = "%.8s %" + Integer.toString(origins.length).length()
+            + "d) %s%n";
+        for (int i = 0; i < origins.length; i += 1) {
+            System.out.printf(format, origins[i], i + 1, lines[i]);
+        }
+    }
+
+    /** Cuts the history of this repository down to the DEPTH most recent
+     *  commits on each branch. Older commits are moved into an archive pack
+     *  and are left out of the history until unshallow is run. */
+    public void shallow(String depth) {
+        Shallow.truncate(Shallow.parseDepth(depth));
+    }
+
+    /** Restores the history that shallow archived, whose objects are read
+     *  back as commands reach them. */
+    public void unshallow() {
+        Shallow.unshallow();
+    }
+
+    /** Verifies the objects and references of this repository, printing
+     *  each problem found. If there are any, gitlet exits with a nonzero
+     *  status. */
+    public void fsck() {
+        List<String> problems = Fsck.run();
+        for (String problem : problems) {
+            System.out.println(problem);
+        }
+        if (!problems.isEmpty()) {
+            Main.fail();
+        }
+    }
+
+    /** Carries out the tag command with operands ARGS. "tag NAME [COMMIT]"
+     *  makes a lightweight tag, "tag -m MESSAGE NAME [COMMIT]" an annotated
+     *  one, of COMMIT or by default the head commit; "tag -d NAME" deletes
+     *  the tag NAME. */
+    public void tag(List<String> args) {
+        if (args.size() == 2 && args.get(0).equals("-d")) {
+            if (!Tag.exists(args.get(1))) {
+                throw error("A tag with that name does not exist.");
+            }
+            Tag.delete(args.get(1));
+            return;
+        }
+        String message = null;
+        if (args.size() >= 2 && args.get(0).equals("-m")) {
+            message = args.get(1);
+            args = args.subList(2, args.size());
+        }
+        if (args.isEmpty() || args.size() > 2) {
+            throw error("Incorrect operands.");
+        } else if (!Tag.validName(args.get(0))) {
+            throw error("Invalid tag name.");
+        }
+        String commit = args.size() == 2 ? resolve(args.get(1))
+            : lastCommit().getID();
+        new Tag(args.get(0), commit, message, System.currentTimeMillis())
+            .save();
+    }
+
+    /** Adds or lists the working trees of this repository, as ARGS says:
+     *  "add PATH BRANCH" adds a working tree at PATH with BRANCH checked
+     *  out, and "list" prints the top directory and active branch of each
+     *  working tree. */
+    public void worktree(List<String> args) {
+        if (args.size() == 3 && args.get(0).equals("add")) {
+            String branchName = args.get(2);
+            if (!Branch.exists(branchName)) {
+                throw error("No such branch exists.");
+            } else if (branchName.equals(_active)) {
+                throw error("Branch %s is checked out here.", branchName);
+            }
+            checkNotHeld(branchName);
+            Worktree.add(args.get(1), branchName);
+        } else if (args.size() == 1 && args.get(0).equals("list")) {
+            for (Worktree tree : Worktree.all()) {
+                System.out.printf("%s [%s]%n", tree.top(), tree.active());
+            }
+        } else {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Throws an error if the branch BRANCHNAME is checked out in another
+     *  working tree. */
+    private static void checkNotHeld(String branchName) {
+        Worktree holder = Worktree.holding(branchName);
+        if (holder != null) {
+            throw error("Branch %s is checked out in %s.", branchName,
+                    holder.top());
+        }
+    }
+
+    /** Writes the files of the commit named in ARGS as an archive, to the
+     *  file named after it or else to the standard output. The format is
+     *  given by an operand "--format=tar" or "--format=zip"; without one,
+     *  it is zip if the file's name ends in ".zip" and tar otherwise. */
+    public void archive(List<String> args) {
+        String format = null;
+        List<String> operands = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--format=")) {
+                format = arg.substring("--format=".length());
+            } else {
+                operands.add(arg);
+            }
+        }
+        if (operands.isEmpty() || operands.size() > 2) {
+            throw error("Incorrect operands.");
+        }
+        Commit commit = getCommit(resolve(operands.get(0)));
+        String output = operands.size() == 2 ? operands.get(1) : null;
+        if (format == null) {
+            format = output != null && output.endsWith(".zip") ? "zip"
+                : "tar";
+        } else if (!format.equals("tar") && !format.equals("zip")) {
+            throw error("Unknown archive format %s.", format);
+        }
+        if (output == null) {
+            try {
+                Archive.write(commit, format, System.out);
+                System.out.flush();
+            } catch (IOException excp) {
+                throw error("Could not write the archive.");
+            }
+            return;
+        }
+        File file = new File(output);
+        boolean written = false;
+        try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(file))) {
+            Archive.write(commit, format, out);
+            written = true;
+        } catch (IOException excp) {
+            throw error("Could not write the archive.");
+        } finally {
+            if (!written) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Writes the history of every branch as a stream for fast-import to
+     *  the file named OUTPUT, or to the standard output if OUTPUT is
+     *  null. */
+    public void fastExport(String output) {
+        if (output == null) {
+            try {
+                OutputStream out = new BufferedOutputStream(System.out);
+                FastExport.write(out);
+                out.flush();
+            } catch (IOException excp) {
+                throw error("Could not write the stream.");
+            }
+            return;
+        }
+        File file = new File(output);
+        boolean written = false;
+        try (OutputStream out =
+                 new BufferedOutputStream(new FileOutputStream(file))) {
+            FastExport.write(out);
+            written = true;
+        } catch (IOException excp) {
+            throw error("Could not write the stream.");
+        } finally {
+            if (!written) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Adds the history in the stream written by fast-export that is in
+     *  the file named INPUT, or on the standard input if INPUT is null, to
+     *  this repository. If the current branch is moved, the working
+     *  directory is brought along as for a fast-forward. */
+    public void fastImport(String input) {
+        Commit head = lastCommit();
+        try (InputStream in = new BufferedInputStream(input == null
+                ? System.in : new FileInputStream(input))) {
+            FastImport.read(in);
+        } catch (FileNotFoundException excp) {
+            throw error("File does not exist.");
+        } catch (IOException excp) {
+            throw error("Could not read the stream.");
+        }
+        Commit moved = lastCommit();
+        if (!moved.getID().equals(head.getID())) {
+            update(head, moved);
+        }
+    }
+
+    /** Prints each tag, in order. */
+    public void tags() {
+        for (String name : Tag.names()) {
+            System.out.println(Tag.read(name));
+        }
+    }
+
+    /** Moves all loose branches and tags into the packed refs. */
+    public void packRefs() {
+        Refs.pack();
+    }
+
+    /** Prints the log of the updates of the head of the branch NAME, most
+     *  recent first. */
+    public void reflog(String name) {
+        if (!Branch.exists(name)) {
+            throw error("A branch with that name does not exist.");
+        }
+        Reflog.print(name);
+    }
+
+    /** Carries out the stash subcommand ACTION with operands ARGS. "push"
+     *  sets aside the uncommitted changes, "pop" applies and removes the
+     *  entry ARGS names (the newest by default), "drop" removes it without
+     *  applying it and "list" prints the entries. */
+    public void stash(String action, List<String> args) {
+        int index = args.size() == 1 ? Stash.parseIndex(args.get(0)) : 0;
+        if (args.size() > 1) {
+            throw error("Incorrect operands.");
+        } else if (action.equals("push") && args.isEmpty()) {
+            Stash.push(_active, lastCommit());
+        } else if (action.equals("pop")) {
+            Stash.pop(index, lastCommit());
+        } else if (action.equals("drop")) {
+            Stash.drop(index);
+        } else if (action.equals("list") && args.isEmpty()) {
+            Stash.list();
+        } else {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Carries out the sparse-checkout subcommand ACTION with operands
+     *  PATTERNS. "set" replaces the sparse patterns with PATTERNS, "disable"
+     *  removes them and "list" prints them. */
+    public void sparse(String action, List<String> patterns) {
+        if (action.equals("set") && !patterns.isEmpty()) {
+            resparse(new Sparse(patterns));
+        } else if (action.equals("disable") && patterns.isEmpty()) {
+            resparse(new Sparse(Collections.emptyList()));
+        } else if (action.equals("list") && patterns.isEmpty()) {
+            for (String pattern : Sparse.get().patterns()) {
+                System.out.println(pattern);
+            }
+        } else {
+            throw error("Incorrect operands.");
+        }
+    }
+
+    /** Makes NEWPATTERNS the sparse patterns, writing the files of the head
+     *  commit that they newly select and deleting those that they no
+     *  longer select. Nothing is changed if that would overwrite a file
+     *  that is not tracked as it is or delete a modified one. */
+    private void resparse(Sparse newPatterns) {
+        Sparse old = Sparse.get();
+        Commit head = lastCommit();
+        List<String> added = new ArrayList<>(), dropped = new ArrayList<>();
+        for (String file : head.filenames()) {
+            boolean is = newPatterns.includes(file);
+            if (is == old.includes(file)) {
+                continue;
+            }
+            String hash = Monitor.hashOf(file);
+            if (hash != null && !hash.equals(head.hashOf(file))) {
+                if (is) {
+                    throw error("There is an untracked file in the way;"
+                            + " delete it, or add and commit it first.");
+                }
+                throw error("File %s has changes that would be lost;"
+                        + " commit them first.", file);
+            }
+            (is ? added : dropped).add(file);
+        }
+        newPatterns.save();
+        for (String file : dropped) {
+            restrictedDelete(file);
+        }
+        for (String file : added) {
+            head.checkout(head.hashOf(file));
+        }
+    }
+
+    /** Records a remote repository named NAME whose .gitlet directory is at
+     *  PATH. */
+    public void addRemote(String name, String path) {
+        Remote.add(name, path);
+    }
+
+    /** Forgets the remote repository named NAME. */
+    public void rmRemote(String name) {
+        Remote.remove(name);
+    }
+
+    /** Appends the current branch's commits to BRANCH in the remote
+     *  repository REMOTE, sending only the objects it lacks. */
+    public void push(String remote, String branch) {
+        Remote.get(remote).push(lastCommit(), branch);
+    }
+
+    /** Copies the commits of BRANCH in the remote repository REMOTE into
+     *  the local branch REMOTE/BRANCH, sending only the objects this
+     *  repository lacks. */
+    public void fetch(String remote, String branch) {
+        Remote.get(remote).fetch(branch);
+    }
+
+    /** Fetches BRANCH from the remote repository REMOTE and merges it into
+     *  the current branch. */
+    public void pull(String remote, String branch) {
+        fetch(remote, branch);
+        merge(remote + "/" + branch);
+    }
+
+    /** Returns the name of the currently active branch. */
+    public String activeName() {
+        return _active;
+    }
+
+    /** The version of the serialized form of repositories, fixed at the one
+     *  that older versions of gitlet computed for it. */
+    private static final long serialVersionUID = -1673768303402680584L;
+
     /** The currently active branch for this repository. */
     private String _active;
 
+    /** The exit status with which a bisect run command skips a commit. */
+    private static final int SKIP_STATUS = 125;
+
+    /** The lowest exit status with which a bisect run command stops the
+     *  search. */
+    private static final int ABORT_STATUS = 128;
+
 }
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Support for shallow repositories, whose history is cut off at a set of
+ *  boundary commits. History beyond the boundary is moved into an archive
+ *  pack, and traversals stop at the boundary, so that the archive is not
+ *  read, until unshallow brings the archived history back; its objects
+ *  are then faulted back in as traversals reach them.
+ *  @author Jack Mango */
+class Shallow {
+
+    /** Returns true if COMMITID is a boundary commit, whose parents may
+     *  be missing. */
+    static boolean isBoundary(String commitId) {
+        return boundaries().contains(commitId);
+    }
+
+    /** Returns the IDs of the boundary commits, reading them the first
+     *  time they are needed. */
+    static synchronized Set<String> boundaries() {
+        RepoContext context = RepoContext.current();
+        Set<String> result = context.get(BOUNDARIES);
+        if (result == null) {
+            result = new TreeSet<>();
+            File file = join(SHALLOW);
+            if (file.exists()) {
+                for (String id : readContentsAsString(file).split("\n")) {
+                    if (!id.isEmpty()) {
+                        result.add(id);
+                    }
+                }
+            }
+            context.put(BOUNDARIES, result);
+        }
+        return result;
+    }
+
+    /** Returns true if the commit COMMITID is present other than in an
+     *  archive of the history beyond a boundary. */
+    static boolean present(String commitId) {
+        File file = commitFile(commitId);
+        return file.exists() || Pack.all().stream()
+            .anyMatch(p -> !p.getFile().getName().startsWith(ARCHIVE)
+                    && p.contains(Pack.keyOf(file)));
+    }
+
+    /** Makes the history archived beyond the boundaries part of the history
+     *  of this repository again, provided it has been kept. */
+    static void unshallow() {
+        if (boundaries().isEmpty()) {
+            throw error("The repository is not shallow.");
+        }
+        for (String id : boundaries()) {
+            for (String parent : getCommit(id).declaredParentIds()) {
+                if (!hasCommit(parent)) {
+                    throw error("The history beyond the boundary has"
+                            + " been lost.");
+                }
+            }
+        }
+        join(SHALLOW).delete();
+        RepoContext.current().put(BOUNDARIES, null);
+    }
+
+    /** Keeps only the commits within DEPTH steps of some branch head, moving
+     *  older commits, and the blobs only they use, into a new archive pack.
+     *  The kept commits whose parents are archived become boundaries. */
+    static void truncate(int depth) {
+        Map<String, Integer> kept = new HashMap<>();
+        Queue<String> queue = new ArrayDeque<>();
+        for (String name : Branch.names()) {
+            String head = Branch.read(name).getHead();
+            kept.put(head, 0);
+            queue.add(head);
+        }
+        Set<String> boundary = new TreeSet<>(boundaries());
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            int next = kept.get(id) + 1;
+            for (String parent : getCommit(id).parentIds()) {
+                if (next >= depth) {
+                    boundary.add(id);
+                } else if (!kept.containsKey(parent)) {
+                    kept.put(parent, next);
+                    queue.add(parent);
+                }
+            }
+        }
+        boundary.retainAll(kept.keySet());
+        Set<String> keptBlobs = new HashSet<>();
+        for (String id : kept.keySet()) {
+            keptBlobs.addAll(getCommit(id).hashes());
+        }
+        StagingArea stg = StagingArea.load();
+        for (String file : stg.additionDump()) {
+            keptBlobs.add(stg.additionGetID(file));
+        }
+        List<File> archived = new ArrayList<>();
+        for (String id : commitIds()) {
+            if (!kept.containsKey(id)) {
+                for (String blob : getCommit(id).hashes()) {
+                    if (!keptBlobs.contains(blob)
+                            && blobFile(blob).exists()) {
+                        archived.add(blobFile(blob));
+                        keptBlobs.add(blob);
+                    }
+                }
+                archived.add(commitFile(id));
+            }
+        }
+        if (archived.isEmpty()) {
+            return;
+        }
+        File dest = join(PACKSDIR,
+                ARCHIVE + System.currentTimeMillis() + Pack.SUFFIX);
+        try (Pack.Writer pack = new Pack.Writer(dest)) {
+            for (File file : archived) {
+                pack.add(Pack.keyOf(file), file);
+            }
+            pack.finish();
+        }
+        writeContents(join(SHALLOW),
+                String.join("\n", boundary) + "\n");
+        RepoContext.current().put(BOUNDARIES, null);
+        for (File file : archived) {
+            file.delete();
+        }
+    }
+
+    /** Returns the depth given by the command-line argument ARG. */
+    static int parseDepth(String arg) {
+        int depth;
+        try {
+            depth = Integer.parseInt(arg);
+        } catch (NumberFormatException excp) {
+            depth = 0;
+        }
+        if (depth <= 0) {
+            throw error("Depth must be a positive number.");
+        }
+        return depth;
+    }
+
+    /** The prefix of the names of packs archiving history beyond the
+     *  boundary. */
+    static final String ARCHIVE = "archive-";
+
+    /** The path to the list of boundary commits. */
+    static final String SHALLOW = ".gitlet/Objects/shallow";
+
+    /** The key of the boundary commit IDs of each repository, once
+     *  read. */
+    private static final RepoContext.Key<Set<String>> BOUNDARIES =
+        new RepoContext.Key<>();
+
+}
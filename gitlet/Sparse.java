@@ -0,0 +1,141 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The sparse-checkout patterns of a repository, which limit the tracked
+ *  files that are written to and scanned in the working directory. Commits
+ *  still record every file. Each pattern is a glob that selects the paths
+ *  it matches and everything beneath them; a pattern beginning with "!"
+ *  deselects them instead, and later patterns override earlier ones. With
+ *  no patterns, every path is selected.
+ *  @author Jack Mango */
+class Sparse {
+
+    /** The sparse patterns given by the strings in PATTERNS. */
+    Sparse(List<String> patterns) {
+        _patterns = new ArrayList<>();
+        for (String text : patterns) {
+            _patterns.add(new Pattern(text));
+        }
+    }
+
+    /** Returns the sparse patterns of this repository, reading them the
+     *  first time they are needed. */
+    static synchronized Sparse get() {
+        RepoContext context = RepoContext.current();
+        Sparse result = context.get(CURRENT);
+        if (result == null) {
+            File file = join(SPARSE);
+            List<String> lines = new ArrayList<>();
+            if (file.exists()) {
+                for (String line : readContentsAsString(file).split("\n")) {
+                    if (!line.isEmpty()) {
+                        lines.add(line);
+                    }
+                }
+            }
+            result = new Sparse(lines);
+            context.put(CURRENT, result);
+        }
+        return result;
+    }
+
+    /** Returns true if PATH is selected by this repository's sparse
+     *  patterns. */
+    static boolean selects(String path) {
+        return get().includes(path);
+    }
+
+    /** Makes these the sparse patterns of this repository. */
+    void save() {
+        File file = join(SPARSE);
+        try (LockFile lock = LockFile.acquire(file)) {
+            if (_patterns.isEmpty()) {
+                file.delete();
+            } else {
+                lock.commit(String.join("\n", patterns()) + "\n");
+            }
+        }
+        synchronized (Sparse.class) {
+            RepoContext.current().put(CURRENT, this);
+        }
+    }
+
+    /** Returns true if PATH is selected by these patterns. */
+    boolean includes(String path) {
+        if (_patterns.isEmpty()) {
+            return true;
+        }
+        boolean result = _patterns.get(0)._exclude;
+        for (Pattern pattern : _patterns) {
+            if (pattern.matches(path)) {
+                result = !pattern._exclude;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the patterns as they were given. */
+    List<String> patterns() {
+        List<String> result = new ArrayList<>();
+        for (Pattern pattern : _patterns) {
+            result.add(pattern._text);
+        }
+        return result;
+    }
+
+    /** One sparse pattern. */
+    private static class Pattern {
+
+        /** The pattern written as TEXT. */
+        Pattern(String text) {
+            _text = text;
+            _exclude = text.startsWith("!");
+            String glob = _exclude ? text.substring(1) : text;
+            while (glob.endsWith("/") && glob.length() > 1) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            _matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        }
+
+        /** Returns true if this pattern matches PATH or a directory
+         *  containing it. */
+        boolean matches(String path) {
+            for (Path p = Paths.get(path).normalize(); p != null;
+                 p = p.getParent()) {
+                if (_matcher.matches(p)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** The pattern as written. */
+        private final String _text;
+
+        /** True if this pattern deselects the paths it matches. */
+        private final boolean _exclude;
+
+        /** Matches the paths selected by this pattern. */
+        private final PathMatcher _matcher;
+    }
+
+    /** The path to the sparse patterns. */
+    static final String SPARSE = ".gitlet/Objects/sparse";
+
+    /** The key of the sparse patterns of each repository, once read. */
+    private static final RepoContext.Key<Sparse> CURRENT =
+        new RepoContext.Key<>();
+
+    /** The patterns, in order. */
+    private final List<Pattern> _patterns;
+
+}
@@ -1,104 +1,513 @@
 package gitlet;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamConstants;
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.HashMap;
-import java.util.Collection;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 import static gitlet.Utils.*;
 
-/** Handles file staging for gitlet using object persistance.
+/** Handles file staging for gitlet.  The staging area is persisted as a
+ *  short append-only log of text records, one per change, on top of a
+ *  stack of runs: files in .gitlet/Objects/stage that each hold one record
+ *  per file name, sorted by name. The log names the runs, oldest first,
+ *  before its records. Staging a file appends one record to the log and
+ *  finds what was staged for it before by binary search in each run, so
+ *  it costs O(log n) I/O however many files are staged. When the log grows
+ *  long its records become a new run, and the newest run is merged into
+ *  the one beneath it while it is at least half that one's size; so there
+ *  are O(log n) runs, and each record is rewritten O(log n) times. Commands
+ *  that need every staged file, such as status and commit, merge them all,
+ *  and get the files in sorted order.
  * @author Jack Mango */
 
-public class StagingArea implements Serializable {
+public class StagingArea {
 
-    /** Create a new staging area with the absolute PATH of the
-     * working directory. */
+    /** Create a new, empty staging area. Saving it replaces whatever staging
+     *  area was previously stored. */
     public StagingArea() {
-        _addition = new HashMap<String, String>();
-        _removal = new HashSet<String>();
+        this(true);
+    }
+
+    /** A staging area that replaces the stored one if RESET, and otherwise
+     *  adds to it. */
+    private StagingArea(boolean reset) {
+        if (reset) {
+            _addition = new TreeMap<String, ObjectId>();
+            _stamps = new HashMap<String, String>();
+            _removal = new TreeSet<String>();
+        }
+        _runs = new ArrayList<Run>();
+        _changes = new TreeMap<String, Entry>();
+        _pending = new ArrayList<String>();
+        _loaded = new byte[0];
+        _reset = reset;
+    }
+
+    /** Returns the staging area stored in this repository, or the one
+     *  most recently saved if saves are being held. */
+    public static StagingArea load() {
+        StagingArea saved = RepoContext.current().get(SAVED);
+        if (held() && saved != null) {
+            return saved;
+        }
+        return read();
+    }
+
+    /** Returns the staging area stored in this repository. Another process
+     *  may replace runs while they are being opened, in which case the log
+     *  is read again. */
+    private static StagingArea read() {
+        for (int i = 0; i < READ_ATTEMPTS; i += 1) {
+            StagingArea stg = readOnce();
+            if (stg != null) {
+                return stg;
+            }
+        }
+        throw error("Corrupt staging area.");
+    }
+
+    /** Returns the staging area stored in this repository, or null if a run
+     *  that its log names no longer exists. The log may be read while
+     *  another process is appending to it, so a last record that is not yet
+     *  complete is left out; it is seen by the next load. A staging area
+     *  stored by an older version as a serialized object is converted, and
+     *  is replaced by a log when next saved. */
+    private static StagingArea readOnce() {
+        StagingArea stg = new StagingArea(false);
+        File log = join(STGOBJ);
+        if (!log.exists()) {
+            return stg;
+        }
+        byte[] contents = readContents(log);
+        stg._loaded = contents;
+        if (contents.length >= 2 && ByteBuffer.wrap(contents).getShort()
+                == ObjectStreamConstants.STREAM_MAGIC) {
+            stg.migrate(contents);
+            return stg;
+        }
+        String text = new String(contents, StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n') + 1;
+        stg._torn = end < text.length();
+        for (String line : text.substring(0, end).split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields[0].equals(RUN)) {
+                Run run = Run.open(fields);
+                if (run == null) {
+                    return null;
+                }
+                stg._runs.add(run);
+            } else {
+                stg.change(Entry.parse(fields));
+                stg._logRecords += 1;
+            }
+        }
+        return stg;
+    }
+
+    /** Fills this staging area from CONTENTS, a staging area serialized
+     *  by an older version of gitlet, and marks it to replace the stored
+     *  one when saved. */
+    private void migrate(byte[] contents) {
+        _addition = new TreeMap<String, ObjectId>();
+        _stamps = new HashMap<String, String>();
+        _removal = new TreeSet<String>();
+        try (ObjectInputStream in =
+                 new LegacyInputStream(new ByteArrayInputStream(contents))) {
+            Legacy old = (Legacy) in.readObject();
+            for (Map.Entry<String, String> entry : old._addition.entrySet()) {
+                _addition.put(entry.getKey(), ObjectId.parse(entry.getValue()));
+                _stamps.put(entry.getKey(), UNKNOWN_STAMP);
+            }
+            _removal.addAll(old._removal);
+        } catch (IOException | ClassCastException | NullPointerException
+                 | ClassNotFoundException excp) {
+            throw error("Corrupt staging area.");
+        }
+        _reset = true;
+    }
+
+    /** Adds ENTRY, the newest change to its file, to the changes made by
+     *  the log and the pending records. */
+    private void change(Entry entry) {
+        _changes.put(entry._name, entry.after(_changes.get(entry._name)));
+    }
+
+    /** Applies ENTRY to the full view of this staging area. */
+    private void apply(Entry entry) {
+        String name = entry._name;
+        if (entry._kind == 'A') {
+            _addition.put(name, entry._id);
+            _stamps.put(name, entry._stamp);
+        } else if (entry._kind != 'r') {
+            _addition.remove(name);
+            _stamps.remove(name);
+        }
+        if (entry._kind == 'R') {
+            _removal.add(name);
+        } else if (entry._kind != 'a') {
+            _removal.remove(name);
+        }
+    }
+
+    /** Makes the full view of this staging area, merging every run and the
+     *  log, unless it has already been made. */
+    private void full() {
+        if (_addition != null) {
+            return;
+        }
+        _addition = new TreeMap<String, ObjectId>();
+        _stamps = new HashMap<String, String>();
+        _removal = new TreeSet<String>();
+        for (Run run : _runs) {
+            run.forEach(this::apply);
+        }
+        for (Entry entry : _changes.values()) {
+            apply(entry);
+        }
+    }
+
+    /** Returns what is staged for the file NAME: an entry of kind A or R,
+     *  or null if it is staged for neither. Once the full view has been
+     *  made, it is used instead of the log and runs. */
+    private Entry lookup(String name) {
+        if (_addition != null) {
+            if (_addition.containsKey(name)) {
+                return new Entry('A', name, _addition.get(name),
+                        _stamps.get(name));
+            }
+            return _removal.contains(name) ? new Entry('R', name, null, null)
+                : null;
+        }
+        Entry result = _changes.get(name);
+        for (int i = _runs.size() - 1;
+             i >= 0 && (result == null || !result.settled()); i -= 1) {
+            Entry older = _runs.get(i).find(name);
+            if (older != null) {
+                result = result == null ? older : result.after(older);
+            }
+        }
+        return result == null || !result.staged() ? null : result;
+    }
+
+    /** Applies and records the log record made of FIELDS. */
+    private void log(String... fields) {
+        Entry entry = Entry.parse(fields);
+        change(entry);
+        if (_addition != null) {
+            apply(entry);
+        }
+        _pending.add(String.join("\t", fields));
+    }
+
+    /** Saves this staging area. While saves are being held, this only makes
+     *  it the staging area that load() returns, and it is written by the
+     *  next flush(). */
+    public void save() {
+        if (held()) {
+            RepoContext.current().put(SAVED, this);
+        } else {
+            write();
+        }
+    }
+
+    /** Empties this staging area, whose entries have just been committed,
+     *  and saves it. Unlike saving a new staging area, this keeps whatever
+     *  another process staged after this one was loaded: the stored log is
+     *  emptied outright only if it is as it was then, and otherwise only
+     *  the committed entries are dropped from it. */
+    public void clearCommitted() {
+        full();
+        _committedAdd = _addition;
+        _committedRm = _removal;
+        _addition = new TreeMap<String, ObjectId>();
+        _stamps = new HashMap<String, String>();
+        _removal = new TreeSet<String>();
+        _pending.clear();
+        save();
+    }
+
+    /** Defers writing saved staging areas until flush() is called, so that
+     *  a run of commands in one process reads the log once and writes it
+     *  only at checkpoints. */
+    static void hold() {
+        RepoContext.current().put(HELD, true);
+    }
+
+    /** Returns true if saves are being held until the next flush. */
+    private static boolean held() {
+        return Boolean.TRUE.equals(RepoContext.current().get(HELD));
+    }
+
+    /** Writes the staging area saved since the last flush, if any. */
+    static void flush() {
+        StagingArea saved = RepoContext.current().get(SAVED);
+        if (saved != null) {
+            saved.write();
+        }
+    }
+
+    /** Writes the changes made since this staging area was loaded. Pending
+     *  records are appended to the log, unless it would then be too long,
+     *  when the log and the pending records become a new run instead. The
+     *  log is locked while it is written; if another process has changed it
+     *  since it was loaded, the pending changes are applied on top of
+     *  theirs. A staging area that was cleared after a commit is always
+     *  written as a single run, and a log that ends in a record left
+     *  incomplete by a process that failed while appending is always made
+     *  into a run. */
+    private void write() {
+        File log = join(STGOBJ);
+        try (LockFile lock = LockFile.acquire(log)) {
+            byte[] stored = log.exists() ? readContents(log) : new byte[0];
+            if (!_reset && !Arrays.equals(stored, _loaded)) {
+                rebase();
+            }
+            List<Run> obsolete = new ArrayList<>();
+            if (_reset || _committedAdd != null) {
+                TreeMap<String, Entry> entries = new TreeMap<>();
+                for (Map.Entry<String, ObjectId> entry : _addition.entrySet()) {
+                    entries.put(entry.getKey(), new Entry('A', entry.getKey(),
+                            entry.getValue(), _stamps.get(entry.getKey())));
+                }
+                for (String file : _removal) {
+                    entries.put(file, new Entry('R', file, null, null));
+                }
+                obsolete.addAll(_runs);
+                obsolete.addAll(Run.named(stored));
+                _runs = new ArrayList<>();
+                addRun(entries.values(), obsolete);
+                commit(lock, obsolete);
+            } else if (_torn || _logRecords + _pending.size() > LOG_LIMIT) {
+                addRun(_changes.values(), obsolete);
+                commit(lock, obsolete);
+            } else if (!_pending.isEmpty()) {
+                StringBuilder out = new StringBuilder();
+                for (String record : _pending) {
+                    out.append(record).append('\n');
+                }
+                Files.write(log.toPath(),
+                        out.toString().getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                _logRecords += _pending.size();
+                _loaded = readContents(log);
+            }
+        } catch (IOException excp) {
+            throw error("Could not write the staging area.");
+        }
+        _pending.clear();
+        _reset = false;
+        _torn = false;
+        _committedAdd = null;
+        _committedRm = null;
+    }
+
+    /** Adds a run holding ENTRIES, which are sorted by name, on top of the
+     *  runs of this staging area, and merges the newest run into the one
+     *  beneath it for as long as it is at least half that one's size. Runs
+     *  that are merged away are added to OBSOLETE, and runs left empty are
+     *  dropped. */
+    private void addRun(Collection<Entry> entries, List<Run> obsolete)
+        throws IOException {
+        Run run = Run.write(entries, _runs.isEmpty());
+        if (run != null) {
+            _runs.add(run);
+        }
+        while (_runs.size() >= 2) {
+            int last = _runs.size() - 1;
+            Run newer = _runs.get(last), older = _runs.get(last - 1);
+            if (2 * newer._count < older._count) {
+                break;
+            }
+            _runs.remove(last);
+            _runs.remove(last - 1);
+            obsolete.add(older);
+            obsolete.add(newer);
+            Run merged = Run.merge(older, newer, _runs.isEmpty());
+            if (merged != null) {
+                _runs.add(merged);
+            }
+        }
+    }
+
+    /** Replaces the log held by LOCK with one naming the runs of this
+     *  staging area and holding no records, then deletes the runs in
+     *  OBSOLETE that are no longer named. */
+    private void commit(LockFile lock, List<Run> obsolete) {
+        StringBuilder out = new StringBuilder();
+        for (Run run : _runs) {
+            out.append(String.join("\t", RUN, run._file.getName(),
+                    Integer.toString(run._count))).append('\n');
+        }
+        lock.commit(out.toString());
+        for (Run run : obsolete) {
+            if (!_runs.contains(run)) {
+                run._file.delete();
+            }
+        }
+        _changes.clear();
+        _logRecords = 0;
+        _loaded = out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Reloads the stored staging area, drops from it the entries that
+     *  were committed, if any, and reapplies the pending records to it. */
+    private void rebase() {
+        StagingArea current = read();
+        if (_committedAdd != null) {
+            current.full();
+            current._addition.entrySet().removeIf(entry -> entry.getValue()
+                    .equals(_committedAdd.get(entry.getKey())));
+            current._stamps.keySet().retainAll(current._addition.keySet());
+            current._removal.removeAll(_committedRm);
+        }
+        for (String record : _pending) {
+            current.log(record.split("\t"));
+        }
+        _addition = current._addition;
+        _stamps = current._stamps;
+        _removal = current._removal;
+        _runs = current._runs;
+        _changes = current._changes;
+        _logRecords = current._logRecords;
+        _torn = current._torn;
+        _loaded = current._loaded;
     }
 
     /** Returns true if the staging area for addition contains the file
      * with FILENAME. */
     public boolean addContains(String filename) {
-        return _addition.containsKey(filename);
+        Entry entry = lookup(filename);
+        return entry != null && entry._kind == 'A';
     }
 
     /** Returns true if the staging area for removal contains the file
      * with name FILENAME. */
     public boolean removeContains(String filename) {
-        return _removal.contains(filename);
+        Entry entry = lookup(filename);
+        return entry != null && entry._kind == 'R';
     }
 
     /** Stages the FILE for removal and unstages for addition. */
     public void stgRemoval(String file) {
-        _removal.add(file);
-        _addition.remove(file);
+        log("R", file);
     }
 
     /** Stages the file with corresponding BLOB for addition and unstages
      *  for removal. */
     public void stgAddition(Blob blob) {
-        _addition.put(blob.getFilename(), blob.getID());
-        _removal.remove(blob.getFilename());
+        log("A", blob.getID(), stamp(workFile(blob.getFilename())),
+                blob.getFilename());
         writeObject(join(BLOBSDIR, blob.getID()), blob);
     }
 
     /** Unstages the file with NAME for addition. */
     public void unstgRemoval(String name) {
-        _removal.remove(name);
+        if (removeContains(name)) {
+            log("r", name);
+        }
     }
 
     /** Unstages the file with name FILENAME for addition. */
     public void unstgAddition(String filename) {
-        if (!readObject(join(BLOBSDIR, additionGetID(filename)),
-                Blob.class).isCommited()) {
-            join(BLOBSDIR, additionGetID(filename)).delete();
+        discard(additionGetID(filename));
+        log("a", filename);
+    }
+
+    /** Deletes the blob BLOBID, which is no longer staged, unless a commit
+     *  or a stashed snapshot refers to it. */
+    static void discard(String blobId) {
+        if (!getBlob(blobId).isCommited() && !Stash.refersTo(blobId)) {
+            join(BLOBSDIR, blobId).delete();
         }
-        _addition.remove(filename);
     }
 
     /** Clear all files staged for addition. Takes O(n) time with respect to
      *  number of staged files*/
     public void clearAddition() {
-        for (String blobId: _addition.values()) {
-            join(BLOBSDIR, blobId).delete();
+        full();
+        for (ObjectId blobId: _addition.values()) {
+            discard(blobId.toString());
         }
         _addition.clear();
+        _stamps.clear();
+        _reset = true;
     }
 
     /** Clear all files staged for removal. */
     public void clearRemoval() {
+        full();
         _removal.clear();
+        _reset = true;
     }
 
     /** Returns the hash of FILE being tracked for addition. */
     public String additionGetID(String file) {
-        return _addition.get(file);
+        Entry entry = lookup(file);
+        return entry == null ? null : ObjectId.toString(entry._id);
     }
 
-    /** Returns all SHA-1 hash IDs for the files staged for addition. */
+    /** Returns the names of the files staged for addition, in order. */
     public Collection<String> additionDump() {
+        full();
         return _addition.keySet();
     }
 
-    /** Returns all filenames for the files staged for removal. */
+    /** Returns all filenames for the files staged for removal, in order. */
     public Collection<String> removalDump() {
+        full();
         return _removal;
     }
 
-    /** Returns a list of filenames that are staged for addition and are
-     *  unmodified. */
+    /** Returns a sorted list of filenames that are staged for addition and
+     *  are unmodified. A file whose size and modification time are the same
+     *  as when it was staged is not reread, unless it was modified no
+     *  earlier than the log was last written: it may then have changed again
+     *  within the same tick of the clock after it was hashed. When a monitor
+     *  is running, a file it has seen unchanged is not even examined. */
     public List<String> unmodified() {
+        full();
         ArrayList<String> result = new ArrayList<String>();
-        for (String filename : _addition.keySet()) {
-            Blob currblob = new Blob(filename,
-                    readContentsAsString(new File(filename)));
-            if (currblob.getID().equals(_addition.get(filename))) {
+        long written = join(STGOBJ).lastModified();
+        for (Map.Entry<String, ObjectId> entry : _addition.entrySet()) {
+            String filename = entry.getKey();
+            File file = workFile(filename);
+            if (Monitor.running()) {
+                if (entry.getValue().toString()
+                        .equals(Monitor.hashOf(filename))) {
+                    result.add(filename);
+                }
+            } else if (!file.isFile()) {
+                continue;
+            } else if (file.lastModified() < written
+                    && stamp(file).equals(_stamps.get(filename))) {
+                result.add(filename);
+            } else if (new Blob(filename, readContentsAsString(file))
+                    .getID().equals(entry.getValue().toString())) {
                 result.add(filename);
             }
         }
@@ -107,17 +516,350 @@ public class StagingArea implements Serializable {
 
     /** Returns true if any files are staged for addition or removal. */
     public boolean anyStaged() {
+        full();
         return !_addition.isEmpty() || !_removal.isEmpty();
     }
 
-    /** The absolute path of the working directory. */
-    private String _dirPath;
+    /** Returns a string identifying the size and modification time of FILE,
+     *  used to tell whether it may have changed since it was staged. */
+    private static String stamp(File file) {
+        return file.length() + ":" + file.lastModified();
+    }
+
+    /** An ObjectInputStream that reads a staging area serialized by an
+     *  older version of gitlet as a Legacy. */
+    private static class LegacyInputStream extends ObjectInputStream {
+
+        /** A stream reading serialized objects from IN. */
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor()
+            throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            return desc.getName().equals(StagingArea.class.getName())
+                ? ObjectStreamClass.lookup(Legacy.class) : desc;
+        }
+    }
+
+    /** The fields of a staging area as older versions of gitlet serialized
+     *  it: the directory of the repository, which is no longer kept, the
+     *  names of the files staged for addition, mapped to the IDs of
+     *  their blobs, and of those staged for removal. */
+    private static class Legacy implements Serializable {
+        /** The path of the directory holding the repository. */
+        private String _dirPath;
+        /** The files staged for addition. */
+        private HashMap<String, String> _addition;
+        /** The files staged for removal. */
+        private HashSet<String> _removal;
+    }
+
+    /** The stamp of a file staged by an older version of gitlet, which
+     *  matches no file, so that the file is always reread. */
+    private static final String UNKNOWN_STAMP = "-";
+
+    /** The key of whether each repository's saves are being held until
+     *  the next flush. */
+    private static final RepoContext.Key<Boolean> HELD =
+        new RepoContext.Key<>();
+
+    /** The key of the staging area of each repository most recently saved
+     *  while saves are held. */
+    private static final RepoContext.Key<StagingArea> SAVED =
+        new RepoContext.Key<>();
+
+    /** The kind of log line naming a run. */
+    private static final String RUN = "L";
+
+    /** The most records the log may hold before they become a run. */
+    private static final int LOG_LIMIT = 64;
+
+    /** The number of times the log is read while runs it names go
+     *  missing before the staging area is taken to be corrupt. */
+    private static final int READ_ATTEMPTS = 8;
 
     /** The files to be added to the next commit; keys are filenames and values
-     *  are SHA-1 hash IDs. */
-    private HashMap<String, String> _addition;
+     *  are SHA-1 hash IDs. Null until every staged file is needed. */
+    private TreeMap<String, ObjectId> _addition;
+
+    /** The size and modification time of each file staged for addition, as
+     *  of when it was staged. Null along with _addition. */
+    private HashMap<String, String> _stamps;
+
+    /** The files to be removed from the next commit; filenames. Null along
+     *  with _addition. */
+    private TreeSet<String> _removal;
+
+    /** The stored runs, oldest first. */
+    private List<Run> _runs;
+
+    /** The change made to each file by the stored log and the pending
+     *  records, which overrides the runs. */
+    private TreeMap<String, Entry> _changes;
+
+    /** Log records not yet written. */
+    private List<String> _pending;
+
+    /** The number of records in the stored log. */
+    private int _logRecords;
+
+    /** The contents of the stored log when it was last read or written by
+     *  this staging area. */
+    private byte[] _loaded;
+
+    /** The entries staged for addition when this staging area was last
+     *  committed and cleared, until it is written; otherwise null. */
+    private TreeMap<String, ObjectId> _committedAdd;
+
+    /** The entries staged for removal when this staging area was last
+     *  committed and cleared, until it is written; otherwise null. */
+    private TreeSet<String> _committedRm;
+
+    /** True if the stored log ended in an incomplete record when it was
+     *  last read. */
+    private boolean _torn;
+
+    /** True if this staging area replaces the stored one outright rather
+     *  than adding to it. */
+    private boolean _reset;
+
+    /** A change to what is staged for one file, as a log record or a line
+     *  of a run describes it. Its kind is A if the file is staged for
+     *  addition, R if it is staged for removal, and C if it is staged for
+     *  neither; a for a change that unstages it for addition only, and r
+     *  for one that unstages it for removal only, which leave the older
+     *  entries for the file to say whether it is staged for the other. */
+    private static class Entry {
+
+        /** An entry of KIND for the file NAME, staged as the blob ID with
+         *  STAMP if KIND is A. */
+        Entry(char kind, String name, ObjectId id, String stamp) {
+            _kind = kind;
+            _name = name;
+            _id = id;
+            _stamp = stamp;
+        }
+
+        /** Returns the entry described by the record FIELDS. */
+        static Entry parse(String[] fields) {
+            char kind = fields[0].charAt(0);
+            if (kind == 'A') {
+                return new Entry(kind, fields[3], ObjectId.parse(fields[1]),
+                        fields[2]);
+            }
+            return new Entry(kind, fields[1], null, null);
+        }
+
+        /** Returns the record describing this entry. */
+        String format() {
+            if (_kind == 'A') {
+                return String.join("\t", "A", _id.toString(), _stamp, _name);
+            }
+            return _kind + "\t" + _name;
+        }
+
+        /** Returns true if this entry says whether the file is staged for
+         *  both addition and removal, so that older ones do not matter. */
+        boolean settled() {
+            return _kind == 'A' || _kind == 'R' || _kind == 'C';
+        }
+
+        /** Returns true if this entry stages the file for anything. */
+        boolean staged() {
+            return _kind == 'A' || _kind == 'R';
+        }
 
-    /** The files to be removed from the next commit; filenames. */
-    private HashSet<String> _removal;
+        /** Returns the entry for this change made after OLDER, which is
+         *  for the same file, or null. */
+        Entry after(Entry older) {
+            if (older == null || settled()) {
+                return this;
+            }
+            char undone = _kind == 'a' ? 'A' : 'R';
+            if (older._kind == _kind) {
+                return this;
+            } else if (older.staged() && older._kind != undone) {
+                return older;
+            }
+            return new Entry('C', _name, null, null);
+        }
+
+        /** The kind of this entry. */
+        private final char _kind;
+        /** The name of the file. */
+        private final String _name;
+        /** The ID of the blob staged for addition, for kind A. */
+        private final ObjectId _id;
+        /** The stamp of the file staged for addition, for kind A. */
+        private final String _stamp;
+    }
+
+    /** An immutable file of entries, one per file name, sorted by name. */
+    private static class Run {
+
+        /** The run stored in FILE, holding COUNT entries. */
+        private Run(File file, int count) {
+            _file = file;
+            _count = count;
+        }
+
+        /** Returns the run named by the log line FIELDS, or null if it
+         *  no longer exists. It is opened at once, so that it can still be
+         *  read if another process then merges it away. */
+        static Run open(String[] fields) {
+            Run run = new Run(join(STAGEDIR, fields[1]),
+                    Integer.parseInt(fields[2]));
+            try {
+                run._contents = mapContents(run._file);
+            } catch (IllegalArgumentException excp) {
+                return null;
+            }
+            return run;
+        }
+
+        /** Returns the runs named by the stored log CONTENTS, which are
+         *  not opened. */
+        static List<Run> named(byte[] contents) {
+            List<Run> result = new ArrayList<>();
+            String text = new String(contents, StandardCharsets.UTF_8);
+            if (text.startsWith(RUN + "\t")) {
+                for (String line : text.split("\n")) {
+                    String[] fields = line.split("\t");
+                    if (fields[0].equals(RUN) && fields.length == 3) {
+                        result.add(new Run(join(STAGEDIR, fields[1]), 0));
+                    }
+                }
+            }
+            return result;
+        }
+
+        /** Writes ENTRIES, which are sorted by name, to a new run and
+         *  returns it. A run at the BOTTOM of the stack has nothing beneath
+         *  it, so only entries that stage a file are kept; returns null if
+         *  no entries are kept. */
+        static Run write(Collection<Entry> entries, boolean bottom)
+            throws IOException {
+            File dir = join(STAGEDIR);
+            dir.mkdirs();
+            File file;
+            while (true) {
+                file = join(dir, String.format("%016x",
+                        ThreadLocalRandom.current().nextLong()));
+                try {
+                    Files.createFile(file.toPath());
+                    break;
+                } catch (FileAlreadyExistsException excp) {
+                    continue;
+                }
+            }
+            int count = 0;
+            try (BufferedWriter out = Files.newBufferedWriter(file.toPath(),
+                    StandardCharsets.UTF_8)) {
+                for (Entry entry : entries) {
+                    if (!bottom || entry.staged()) {
+                        out.write(entry.format());
+                        out.write('\n');
+                        count += 1;
+                    }
+                }
+            }
+            if (count == 0) {
+                file.delete();
+                return null;
+            }
+            return new Run(file, count);
+        }
+
+        /** Returns a run holding the entries of NEWER made after those of
+         *  OLDER, which is directly beneath it, and at the BOTTOM of the
+         *  stack if BOTTOM; or null if it would be empty. */
+        static Run merge(Run older, Run newer, boolean bottom)
+            throws IOException {
+            TreeMap<String, Entry> entries = new TreeMap<>();
+            older.forEach(entry -> entries.put(entry._name, entry));
+            newer.forEach(entry -> entries.put(entry._name,
+                    entry.after(entries.get(entry._name))));
+            return write(entries.values(), bottom);
+        }
+
+        /** Calls ACTION on each entry of this run, in order. */
+        void forEach(Consumer<Entry> action) {
+            ByteBuffer buf = contents();
+            int pos = 0;
+            while (pos < buf.limit()) {
+                int end = lineEnd(buf, pos);
+                action.accept(Entry.parse(line(buf, pos, end).split("\t")));
+                pos = end + 1;
+            }
+        }
+
+        /** Returns the entry of this run for the file NAME, or null. Only
+         *  the O(log n) lines a binary search visits are read. */
+        Entry find(String name) {
+            ByteBuffer buf = contents();
+            int lo = 0, hi = buf.limit();
+            while (lo < hi) {
+                int start = (lo + hi) >>> 1;
+                while (start > lo && buf.get(start - 1) != '\n') {
+                    start -= 1;
+                }
+                int end = lineEnd(buf, start);
+                if (nameOf(line(buf, start, end)).compareTo(name) < 0) {
+                    lo = end + 1;
+                } else {
+                    hi = start;
+                }
+            }
+            if (lo >= buf.limit()) {
+                return null;
+            }
+            String[] fields = line(buf, lo, lineEnd(buf, lo)).split("\t");
+            Entry entry = Entry.parse(fields);
+            return entry._name.equals(name) ? entry : null;
+        }
+
+        /** Returns the contents of this run, which are read or mapped when
+         *  first needed. */
+        private ByteBuffer contents() {
+            if (_contents == null) {
+                _contents = mapContents(_file);
+            }
+            return _contents;
+        }
+
+        /** Returns the position of the newline ending the line of BUF that
+         *  begins at START. */
+        private static int lineEnd(ByteBuffer buf, int start) {
+            int end = start;
+            while (end < buf.limit() && buf.get(end) != '\n') {
+                end += 1;
+            }
+            return end;
+        }
+
+        /** Returns the text of BUF from START to END. */
+        private static String line(ByteBuffer buf, int start, int end) {
+            byte[] bytes = new byte[end - start];
+            for (int i = start; i < end; i += 1) {
+                bytes[i - start] = buf.get(i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Returns the file name of the entry in LINE. */
+        private static String nameOf(String line) {
+            return line.substring(line.lastIndexOf('\t') + 1);
+        }
+
+        /** The file holding this run. */
+        private final File _file;
+        /** The number of entries in this run. */
+        private final int _count;
+        /** The contents of _file, once read. */
+        private ByteBuffer _contents;
+    }
 
 }
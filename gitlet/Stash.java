@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A snapshot of uncommitted changes, set aside so that they can be
+ *  applied again later. A snapshot records the staging area and the
+ *  tracked files whose working contents differ from what is staged or
+ *  committed. Unchanged files are not recorded at all, and the contents
+ *  of files are recorded as blobs, so staged contents are shared with the
+ *  staging area and only modified working files are written. Blobs a
+ *  snapshot refers to are kept while it is on the stack, and are deleted
+ *  along with it when it is popped or dropped unless something else
+ *  refers to them. Finding the modified files hashes every tracked file
+ *  that is not staged, unless a monitor is running, so taking a snapshot
+ *  takes time proportional to the number of tracked files. Snapshots
+ *  are kept in .gitlet/Stash under the hashes of their contents; the
+ *  stack of snapshots, newest first, is listed in .gitlet/Objects/stash.
+ *  @author Jack Mango */
+class Stash implements Serializable {
+
+    /** A snapshot of the changes made on top of the commit HEAD on the
+     *  branch BRANCH. */
+    private Stash(String branch, Commit head) {
+        _base = head.getID();
+        _message = String.format("WIP on %s: %s %s", branch,
+                _base.substring(0, 7), head.getMessage());
+    }
+
+    /** Sets aside the uncommitted changes on top of HEAD, the head of
+     *  BRANCH: records them in a new snapshot, then clears the staging area
+     *  and returns the affected working files to their versions in
+     *  HEAD. */
+    static void push(String branch, Commit head) {
+        StagingArea stg = StagingArea.load();
+        Stash stash = new Stash(branch, head);
+        for (String file : stg.additionDump()) {
+            ObjectId id = ObjectId.parse(stg.additionGetID(file));
+            stash._staged.put(file, id);
+            stash.record(file, id);
+        }
+        stash._removed.addAll(stg.removalDump());
+        for (String file : head.filenames()) {
+            if (!stg.addContains(file) && !stg.removeContains(file)
+                    && Sparse.selects(file)) {
+                stash.record(file, head.idOf(file));
+            }
+        }
+        if (stash.isEmpty()) {
+            throw error("No local changes to save.");
+        }
+        String id = sha1(serialize(stash));
+        join(STASHDIR).mkdir();
+        writeObject(join(STASHDIR, id), stash);
+        List<String> stack = stack();
+        stack.add(0, id);
+        saveStack(stack);
+        new StagingArea().save();
+        for (String file : stash.files()) {
+            if (head.tracking(file)) {
+                head.checkout(head.hashOf(file));
+            } else {
+                restrictedDelete(file);
+            }
+        }
+    }
+
+    /** Applies the snapshot at INDEX in the stack on top of HEAD and
+     *  removes it from the stack. Refuses if anything is staged, if a
+     *  working file the snapshot would change has uncommitted changes, or
+     *  if such a file was changed by the commits made since the snapshot
+     *  was taken, whose changes applying it would undo. */
+    static void pop(int index, Commit head) {
+        List<String> stack = stack();
+        String id = entry(stack, index);
+        Stash stash = readObject(join(STASHDIR, id), Stash.class);
+        StagingArea stg = StagingArea.load();
+        if (stg.anyStaged()) {
+            throw error("You have uncommitted changes.");
+        }
+        for (String file : stash.files()) {
+            String hash = Monitor.hashOf(file);
+            if (hash != null && !hash.equals(head.hashOf(file))) {
+                throw error("Your local changes to %s would be overwritten;"
+                        + " commit or stash them first.", file);
+            }
+        }
+        if (!stash._base.equals(head.getID())) {
+            Commit base = getCommit(stash._base);
+            for (String file : stash.files()) {
+                if (!Objects.equals(base.idOf(file), head.idOf(file))) {
+                    throw error("The stashed changes to %s conflict with"
+                            + " changes committed since.", file);
+                }
+            }
+        }
+        for (Map.Entry<String, ObjectId> entry : stash._staged.entrySet()) {
+            head.checkout(entry.getValue().toString());
+            stg.stgAddition(getBlob(entry.getValue().toString()));
+        }
+        for (String file : stash._removed) {
+            stg.stgRemoval(file);
+            restrictedDelete(file);
+        }
+        for (ObjectId blobId : stash._working.values()) {
+            head.checkout(blobId.toString());
+        }
+        for (String file : stash._deleted) {
+            restrictedDelete(file);
+        }
+        stg.save();
+        stack.remove(index);
+        saveStack(stack);
+        release(id, stash, stack, stg);
+    }
+
+    /** Prints the stack of snapshots, newest first. */
+    static void list() {
+        List<String> stack = stack();
+        for (int i = 0; i < stack.size(); i += 1) {
+            Stash stash = readObject(join(STASHDIR, stack.get(i)),
+                    Stash.class);
+            System.out.printf("stash@{%d}: %s%n", i, stash._message);
+        }
+    }
+
+    /** Removes the snapshot at INDEX from the stack without applying
+     *  it. */
+    static void drop(int index) {
+        List<String> stack = stack();
+        String id = entry(stack, index);
+        Stash stash = readObject(join(STASHDIR, id), Stash.class);
+        stack.remove(index);
+        saveStack(stack);
+        release(id, stash, stack, StagingArea.load());
+        System.out.printf("Dropped stash@{%d} (%s)%n", index, id);
+    }
+
+    /** Returns the stack index named by ARG, which is either a number or
+     *  of the form stash@{N}. */
+    static int parseIndex(String arg) {
+        String n = arg.matches("stash@\\{\\d+\\}")
+            ? arg.substring(7, arg.length() - 1) : arg;
+        try {
+            return Integer.parseInt(n);
+        } catch (NumberFormatException excp) {
+            throw error("%s is not a valid stash reference.", arg);
+        }
+    }
+
+    /** Records the working FILE in this snapshot if its contents differ
+     *  from those of the blob EXPECTED, writing its contents as a blob if
+     *  no blob holds them yet. */
+    private void record(String file, ObjectId expected) {
+        String hash = Monitor.hashOf(file);
+        if (hash == null) {
+            _deleted.add(file);
+        } else if (!hash.equals(expected.toString())) {
+            if (!hasBlob(hash)) {
+                Blob blob = new Blob(file,
+                        readContentsAsString(workFile(file)));
+                writeObject(blobFile(blob.getID()), blob);
+            }
+            _working.put(file, ObjectId.parse(hash));
+        }
+    }
+
+    /** Returns true if a snapshot on the stack refers to the blob
+     *  BLOBID. */
+    static boolean refersTo(String blobId) {
+        ObjectId id = ObjectId.parse(blobId);
+        for (String snapshot : stack()) {
+            Stash stash = readObject(join(STASHDIR, snapshot), Stash.class);
+            if (stash._staged.containsValue(id)
+                    || stash._working.containsValue(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Deletes the snapshot ID, which has just been taken off STACK, and
+     *  the blobs that only STASH, its contents, refers to, unless the same
+     *  snapshot is still on the stack. Blobs staged in STG are kept. */
+    private static void release(String id, Stash stash, List<String> stack,
+                                StagingArea stg) {
+        if (stack.contains(id)) {
+            return;
+        }
+        join(STASHDIR, id).delete();
+        for (Map<String, ObjectId> blobs
+                 : List.of(stash._staged, stash._working)) {
+            for (Map.Entry<String, ObjectId> entry : blobs.entrySet()) {
+                String blobId = entry.getValue().toString();
+                if (!blobId.equals(stg.additionGetID(entry.getKey()))
+                        && hasBlob(blobId)) {
+                    StagingArea.discard(blobId);
+                }
+            }
+        }
+    }
+
+    /** Returns true if this snapshot records no changes. */
+    private boolean isEmpty() {
+        return _staged.isEmpty() && _removed.isEmpty()
+            && _working.isEmpty() && _deleted.isEmpty();
+    }
+
+    /** Returns the names of the files this snapshot changes. */
+    private TreeSet<String> files() {
+        TreeSet<String> result = new TreeSet<>(_staged.keySet());
+        result.addAll(_removed);
+        result.addAll(_working.keySet());
+        result.addAll(_deleted);
+        return result;
+    }
+
+    /** Returns the snapshot IDs in the stack, newest first. */
+    private static List<String> stack() {
+        File file = join(STASH);
+        List<String> result = new ArrayList<>();
+        if (file.exists()) {
+            for (String id : readContentsAsString(file).split("\n")) {
+                if (!id.isEmpty()) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the ID at INDEX in STACK. */
+    private static String entry(List<String> stack, int index) {
+        if (stack.isEmpty()) {
+            throw error("No stash entries found.");
+        } else if (index < 0 || index >= stack.size()) {
+            throw error("stash@{%d} does not exist.", index);
+        }
+        return stack.get(index);
+    }
+
+    /** Stores STACK as the stack of snapshots. */
+    private static void saveStack(List<String> stack) {
+        try (LockFile lock = LockFile.acquire(join(STASH))) {
+            lock.commit(String.join("\n", stack) + (stack.isEmpty() ? ""
+                    : "\n"));
+        }
+    }
+
+    /** The directory holding snapshots. */
+    static final String STASHDIR = ".gitlet/Stash";
+
+    /** The path to the stack of snapshots. */
+    static final String STASH = ".gitlet/Objects/stash";
+
+    /** The version of the serialized form of stashes. */
+    private static final long serialVersionUID = 1832753785780213745L;
+
+    /** The head commit the changes were made on top of. */
+    private final String _base;
+
+    /** A description of the snapshot. */
+    private final String _message;
+
+    /** Blob IDs of the files staged for addition, by name. */
+    private final TreeMap<String, ObjectId> _staged = new TreeMap<>();
+
+    /** Names of the files staged for removal. */
+    private final TreeSet<String> _removed = new TreeSet<>();
+
+    /** Blob IDs of the working contents of files that differ from what is
+     *  staged or committed, by name. */
+    private final TreeMap<String, ObjectId> _working = new TreeMap<>();
+
+    /** Names of the tracked or staged files missing from the working
+     *  directory. */
+    private final TreeSet<String> _deleted = new TreeSet<>();
+
+}
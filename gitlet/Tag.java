@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** A named reference to a commit. A lightweight tag is just the commit's
+ *  ID; an annotated tag also records a message and the time it was made.
+ *  A tag is stored as one line of text, either loose in .gitlet/Tags/NAME
+ *  or in the packed refs: the commit ID, then for an annotated tag the
+ *  time in milliseconds and the message, separated by tabs, with
+ *  backslashes, tabs and newlines in the message escaped.
+ *  @author Jack Mango */
+class Tag {
+
+    /** A tag named NAME for the commit COMMIT, annotated with MESSAGE made
+     *  at TIME (in milliseconds) unless MESSAGE is null. */
+    Tag(String name, String commit, String message, long time) {
+        _name = name;
+        _commit = commit;
+        _message = message;
+        _time = time;
+    }
+
+    /** Returns the tag named NAME, or null if there is none. */
+    static Tag read(String name) {
+        File file = join(TAGSDIR, name);
+        String value = file.exists() ? readContentsAsString(file).trim()
+            : Refs.local().get(Refs.TAGS + name);
+        if (value == null) {
+            return null;
+        }
+        String[] fields = value.split("\t", 3);
+        return fields.length < 3 ? new Tag(name, fields[0], null, 0)
+            : new Tag(name, fields[0], unescape(fields[2]),
+                      Long.parseLong(fields[1]));
+    }
+
+    /** Returns true if a tag named NAME exists. */
+    static boolean exists(String name) {
+        return read(name) != null;
+    }
+
+    /** Returns the names of all tags, in order. */
+    static List<String> names() {
+        TreeSet<String> result = new TreeSet<>(looseNames());
+        result.addAll(Refs.local().names(Refs.TAGS));
+        return List.copyOf(result);
+    }
+
+    /** Returns the names of the tags stored loose, in order. */
+    static List<String> looseNames() {
+        List<String> result = new ArrayList<>();
+        List<String> files = plainFilenamesIn(TAGSDIR);
+        if (files != null) {
+            for (String name : files) {
+                if (!name.endsWith(".lock")) {
+                    result.add(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Deletes the tag named NAME. */
+    static void delete(String name) {
+        File file = join(TAGSDIR, name);
+        try (LockFile lock = LockFile.acquire(file)) {
+            file.delete();
+        }
+        Refs.remove(Refs.TAGS + name);
+    }
+
+    /** Deletes the loose tag NAME, which has been packed with VALUE,
+     *  unless it has changed since. */
+    static void unloose(String name, String value) {
+        File file = join(TAGSDIR, name);
+        try (LockFile lock = LockFile.acquire(file)) {
+            if (file.exists()
+                    && readContentsAsString(file).trim().equals(value)) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Returns true if NAME may name a tag. */
+    static boolean validName(String name) {
+        return name.matches("[A-Za-z0-9_][A-Za-z0-9_.+-]*")
+            && !name.endsWith(".lock");
+    }
+
+    /** Stores this tag, which must not already exist. */
+    void save() {
+        File file = join(TAGSDIR, _name);
+        file.getParentFile().mkdirs();
+        try (LockFile lock = LockFile.acquire(file)) {
+            if (exists(_name)) {
+                throw error("A tag with that name already exists.");
+            }
+            lock.commit(value() + "\n");
+        }
+    }
+
+    /** Returns the ID of the tagged commit. */
+    String getCommit() {
+        return _commit;
+    }
+
+    /** Returns this tag as it is stored. */
+    String value() {
+        return _message == null ? _commit
+            : _commit + "\t" + _time + "\t" + escape(_message);
+    }
+
+    /** Returns a description of this tag: its name, the abbreviated ID of
+     *  its commit and, for an annotated tag, its time and message. */
+    @Override
+    public String toString() {
+        if (_message == null) {
+            return String.format("%s %.8s", _name, _commit);
+        }
+        return String.format("%s %.8s %s%n%s", _name, _commit,
+                Instant.ofEpochMilli(_time).atZone(ZoneId.systemDefault())
+                    .format(Commit.getFormat()), _message);
+    }
+
+    /** Returns TEXT with backslashes, tabs and newlines escaped. */
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\t", "\\t")
+            .replace("\n", "\\n");
+    }
+
+    /** Returns TEXT with the escapes made by escape undone. */
+    private static String unescape(String text) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                i += 1;
+                c = text.charAt(i) == 't' ? '\t'
+                    : text.charAt(i) == 'n' ? '\n' : text.charAt(i);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    /** The path to the loose tags. */
+    static final String TAGSDIR = ".gitlet/Tags";
+
+    /** The name of this tag. */
+    private final String _name;
+
+    /** The ID of the tagged commit. */
+    private final String _commit;
+
+    /** The message of an annotated tag, or null. */
+    private final String _message;
+
+    /** The time an annotated tag was made, in milliseconds. */
+    private final long _time;
+
+}
@@ -3,20 +3,31 @@ package gitlet;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Formatter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 /** Assorted utilities.
@@ -30,27 +41,30 @@ class Utils {
     static final int UID_LENGTH = 40;
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
+     *  be any mixture of byte arrays, byte buffers, Strings and object
+     *  IDs (which are hashed as their hexadecimal forms). */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        return sha1Id(vals).toString();
+    }
+
+    /** Returns the SHA-1 hash of the concatenation of VALS, as for
+     *  sha1(Object...), as an object ID. */
+    static ObjectId sha1Id(Object... vals) {
+        MessageDigest md = SHA1.get();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else if (val instanceof ByteBuffer) {
+                md.update(((ByteBuffer) val).duplicate());
+            } else if (val instanceof ObjectId) {
+                ((ObjectId) val).update(md);
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
         }
+        return ObjectId.fromBytes(md.digest());
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -59,21 +73,46 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
-    /** Returns the hash value of the file named FILE by combining the file
-     *  name and its contents. */
-    static String sha1(File file) {
-        String contents = readContentsAsString(file);
-        return sha1(file.getName() + contents);
+    /** Returns the hash value of FILE, the working file named NAME, by
+     *  combining NAME and its contents. This is the ID of a blob of the
+     *  file. Files that are plain ASCII, as most are, are hashed straight
+     *  from their bytes; others are decoded as a blob's contents would
+     *  be. */
+    static String sha1(File file, String name) {
+        ByteBuffer contents = mapContents(file);
+        for (int i = contents.position(); i < contents.limit(); i += 1) {
+            if (contents.get(i) < 0) {
+                return sha1(name, readContentsAsString(file));
+            }
+        }
+        return sha1(name, contents);
     }
 
+    /** A SHA-1 digest for each thread, reused from one hash to the next
+     *  (digest() resets it). */
+    private static final ThreadLocal<MessageDigest> SHA1 =
+        ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException(
+                        "System does not support SHA-1");
+            }
+        });
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
      *  if FILE was deleted, and false otherwise.  Refuses to delete FILE
      *  and throws IllegalArgumentException unless the directory designated by
-     *  FILE also contains a directory named .gitlet. */
+     *  FILE, or one of its parents, also contains a .gitlet directory or
+     *  file. */
     static boolean restrictedDelete(File file) {
-        if (!(new File(file.getParentFile(), ".gitlet")).isDirectory()) {
+        File dir = file.getAbsoluteFile().getParentFile();
+        while (dir != null && !(new File(dir, GITLETDIR)).exists()) {
+            dir = dir.getParentFile();
+        }
+        if (dir == null) {
             throw new IllegalArgumentException("not .gitlet working directory");
         }
         if (!file.isDirectory()) {
@@ -83,12 +122,14 @@ class Utils {
         }
     }
 
-    /** Deletes the file named FILE if it exists and is not a directory.
-     *  Returns true if FILE was deleted, and false otherwise.  Refuses
-     *  to delete FILE and throws IllegalArgumentException unless the
-     *  directory designated by FILE also contains a directory named .gitlet. */
+    /** Deletes the working file named FILE if it exists and is not a
+     *  directory.  Returns true if FILE was deleted, and false otherwise.
+     *  Refuses to delete FILE and throws IllegalArgumentException unless the
+     *  directory designated by FILE, or one of its parents, also contains a
+     *  .gitlet directory or file. */
     static boolean restrictedDelete(String file) {
-        return restrictedDelete(new File(file));
+        Monitor.invalidate(file);
+        return restrictedDelete(workFile(file));
     }
 
     /* READING AND WRITING FILE CONTENTS */
@@ -139,25 +180,134 @@ class Utils {
         }
     }
 
+    /** Return a read-only buffer over the entire contents of FILE. Files of
+     *  at least MAP_THRESHOLD bytes are memory-mapped so that their contents
+     *  are paged in by the OS rather than copied through the heap; smaller
+     *  files are read in one call, which is cheaper than setting up a
+     *  mapping.  Throws IllegalArgumentException in case of problems. */
+    static ByteBuffer mapContents(File file) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MAP_THRESHOLD) {
+                ByteBuffer buf = ByteBuffer.allocate((int) size);
+                while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                    continue;
+                }
+                buf.flip();
+                return buf;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
-        try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
-            T result = expectedClass.cast(in.readObject());
-            in.close();
-            return result;
+        return readObject(mapContents(file), expectedClass);
+    }
+
+    /** Return an object of type T decoded from the remaining bytes of BUF,
+     *  casting it to EXPECTEDCLASS.  The stream header is checked directly in
+     *  BUF before any decoding, so that a truncated or foreign file is
+     *  rejected without allocating a stream.  Throws a GitletException if
+     *  the object was written by an incompatible version of gitlet, and
+     *  IllegalArgumentException in case of other problems. */
+    static <T extends Serializable> T readObject(ByteBuffer buf,
+                                                 Class<T> expectedClass) {
+        if (buf.remaining() < 4
+                || buf.getShort(buf.position()) != STREAM_MAGIC) {
+            throw new IllegalArgumentException("not a serialized object");
+        }
+        try (ObjectInputStream in =
+                 new ObjectInputStream(new BufferInputStream(buf))) {
+            return expectedClass.cast(in.readObject());
+        } catch (InvalidClassException excp) {
+            throw error("This repository was written by an incompatible "
+                    + "version of gitlet.");
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** An InputStream reading directly from a ByteBuffer, so that mapped
+     *  files can be decoded without an intermediate copy. */
+    private static class BufferInputStream extends InputStream {
+
+        /** A stream over the remaining bytes of BUF. */
+        BufferInputStream(ByteBuffer buf) {
+            _buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return _buf.hasRemaining() ? _buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] dest, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!_buf.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, _buf.remaining());
+            _buf.get(dest, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return _buf.remaining();
+        }
+
+        /** The buffer being read. */
+        private final ByteBuffer _buf;
+    }
+
+    /** Write OBJ to FILE. The object is written to a temporary file in the
+     *  same directory and then renamed into place, so that a concurrent
+     *  reader sees either the old contents of FILE or the new ones, never a
+     *  partial object. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        File dir = file.getAbsoluteFile().getParentFile();
+        try {
+            Path tmp = tempFile(dir);
+            writeContents(tmp.toFile(), serialize(obj));
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Files at least this many bytes long are memory-mapped on read. */
+    static final int MAP_THRESHOLD = 1 << 16;
+
+    /** The first two bytes of every file written by writeObject. */
+    private static final short STREAM_MAGIC = (short) 0xaced;
+
+    /** Creates and returns a new, empty file in DIR whose name begins with
+     *  ".tmp", for writing contents that will then be renamed into place.
+     *  Unlike Files.createTempFile, the file gets the usual permissions, so
+     *  that objects stay readable by everyone sharing the repository. */
+    static Path tempFile(File dir) throws IOException {
+        while (true) {
+            Path tmp = dir.toPath().resolve(String.format(".tmp%016x",
+                    ThreadLocalRandom.current().nextLong()));
+            try {
+                return Files.createFile(tmp);
+            } catch (FileAlreadyExistsException excp) {
+                continue;
+            }
+        }
     }
 
     /* DIRECTORIES */
@@ -188,16 +338,27 @@ class Utils {
      *  lexicographic order as Java Strings.  Returns null if DIR does
      *  not denote a directory. */
     static List<String> plainFilenamesIn(String dir) {
-        return plainFilenamesIn(new File(dir));
+        return plainFilenamesIn(join(dir));
     }
 
     /* OTHER FILE UTILITIES */
 
+    /** Returns the working file NAME, which is relative to the top of the
+     *  current working tree. */
+    static File workFile(String name) {
+        return RepoContext.current().workFile(name);
+    }
+
     /** Return the concatentation of FIRST and OTHERS into a File designator,
      *  analogous to the java.nio.file.Paths.get(String, String[])
-     *  method. */
+     *  method. A path within the .gitlet directory, such as one beginning
+     *  with COMMITSDIR, is resolved by the current RepoContext. */
     static File join(String first, String... others) {
-        return Paths.get(first, others).toFile();
+        Path path = Paths.get(first, others);
+        if (path.startsWith(GITLETDIR)) {
+            return RepoContext.current().file(path);
+        }
+        return path.toFile();
     }
 
     /** Return the concatentation of FIRST and OTHERS into a File designator,
@@ -208,35 +369,151 @@ class Utils {
     }
 
 
+    /** Returns the full id of the commit whose id is COMMITID, or begins
+     *  with COMMITID if it is abbreviated. Loose commits are searched
+     *  first, then packed ones. */
+    static String fullCommitId(String commitId) {
+        if (commitId.length() >= UID_LENGTH) {
+            return commitId;
+        } else if (commitId.length() >= 2) {
+            String prefix = commitId.substring(0, 2);
+            List<String> ids = plainFilenamesIn(join(COMMITSDIR, prefix));
+            if (ids != null) {
+                for (String id : ids) {
+                    if (id.startsWith(commitId.substring(2))) {
+                        return prefix + id;
+                    }
+                }
+            }
+            String key = Pack.complete(String.format("Commits/%s/%s",
+                    prefix, commitId.substring(2)));
+            if (key != null) {
+                return prefix + key.substring(key.lastIndexOf('/') + 1);
+            }
+        }
+        throw error("No commit with that id exists.");
+    }
+
     /** Returns a the file object associated with this COMMITID. If the length
      *  of the COMMITID is less than 40, returns the first file in the
      *  directory corresponding to first two characters of ID that contains
-     *  the abbreviated ID. */
+     *  the abbreviated ID. The file need not exist if the commit is
+     *  packed. */
     static File commitFile(String commitId) {
-        if (commitId.length() < UID_LENGTH) {
-            File dir = join(COMMITSDIR, commitId.substring(0, 2));
-            for (String id : plainFilenamesIn(dir)) {
-                if (id.substring(0,
-                        commitId.length() - 2).equals(commitId.substring(2))) {
-                    return join(dir, id);
+        String id = fullCommitId(commitId);
+        return join(COMMITSDIR, id.substring(0, 2), id.substring(2));
+    }
+
+    /** Returns true if the commit COMMITID, which may be abbreviated, is
+     *  present loose or in a pack. */
+    static boolean hasCommit(String commitId) {
+        try {
+            File file = commitFile(commitId);
+            return file.exists() || Pack.all().stream()
+                    .anyMatch(p -> p.contains(Pack.keyOf(file)));
+        } catch (GitletException excp) {
+            return false;
+        }
+    }
+
+    /** Returns the ids of all commits in the repository, in order. Files
+     *  whose names begin with "." are partly written objects and are
+     *  skipped. */
+    static List<String> commitIds() {
+        ArrayList<String> result = new ArrayList<>();
+        for (int i = 0; i < 256; i++) {
+            String dir = twoHex(i);
+            for (String name : plainFilenamesIn(join(COMMITSDIR, dir))) {
+                if (!name.startsWith(".")) {
+                    result.add(dir + name);
                 }
             }
-        } else {
-            return join(COMMITSDIR, commitId.substring(0, 2),
-                    commitId.substring(2));
+        }
+        return result;
+    }
 
+    /** Returns the ids of all commits in the repository, loose or packed,
+     *  in order, leaving out history archived beyond a shallow boundary. */
+    static List<String> allCommitIds() {
+        TreeSet<String> result = new TreeSet<>(commitIds());
+        for (Pack pack : Pack.all()) {
+            if (!pack.getFile().getName().startsWith(Shallow.ARCHIVE)) {
+                for (String key : pack.keys().subSet("Commits/", "Commits0")) {
+                    result.add(key.substring(8, 10) + key.substring(11));
+                }
+            }
         }
-        throw error("No commit with that id exists.");
+        return new ArrayList<>(result);
     }
 
-    /** Returns the commit object corresponding to COMMITID. */
+    /** Returns the commit object corresponding to COMMITID, unpacking it
+     *  first if it is only present in a pack. */
     public static Commit getCommit(String commitid) {
-        return readObject(commitFile(commitid), Commit.class);
+        Map<String, Commit> cache = commitCache();
+        synchronized (cache) {
+            Commit cached = cache.get(commitid);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        File file = commitFile(commitid);
+        if (!file.exists() && !Pack.fault(file)) {
+            throw error("No commit with that id exists.");
+        }
+        Commit result = readObject(file, Commit.class);
+        synchronized (cache) {
+            cache.put(result.getID(), result);
+        }
+        return result;
+    }
+
+    /** Returns the commits of the current repository read recently, by
+     *  full ID, least recently used first, making the cache the first time
+     *  it is needed. Commits are never changed once written, so a cached
+     *  commit stays valid for as long as the repository is in use. */
+    private static synchronized Map<String, Commit> commitCache() {
+        RepoContext context = RepoContext.current();
+        Map<String, Commit> result = context.get(COMMITS);
+        if (result == null) {
+            result = new LinkedHashMap<String, Commit>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Commit> eldest) {
+                    return size() > COMMIT_CACHE_SIZE;
+                }
+            };
+            context.put(COMMITS, result);
+        }
+        return result;
+    }
+
+    /** The number of commits kept by each repository's commit cache. */
+    private static final int COMMIT_CACHE_SIZE = 4096;
+
+    /** The key of the commit cache of each repository. */
+    private static final RepoContext.Key<Map<String, Commit>> COMMITS =
+        new RepoContext.Key<>();
+
+    /** Returns the file in which the blob BLOBID is stored loose. */
+    static File blobFile(String blobId) {
+        return join(BLOBSDIR, blobId);
     }
 
-    /** Returns the blob associated with this BLOBID. */
+    /** Returns true if the blob BLOBID is present loose or in a pack. */
+    static boolean hasBlob(String blobId) {
+        File file = blobFile(blobId);
+        return file.exists() || Pack.all().stream()
+                .anyMatch(p -> p.contains(Pack.keyOf(file)));
+    }
+
+    /** Returns the blob associated with this BLOBID, unpacking it first if
+     *  it is only present in a pack. */
     public static Blob getBlob(String blobId) {
-        return readObject(join(BLOBSDIR, blobId), Blob.class);
+        File file = blobFile(blobId);
+        if (!file.exists()) {
+            Pack.fault(file);
+        }
+        return readObject(file, Blob.class);
     }
 
     /** Returns the two digit hexadecimal string corresponding to N. */
@@ -280,6 +557,9 @@ class Utils {
 
     /* COMMONLY USED FILEPATHS */
 
+    /** The path to the repository directory. */
+    static final String GITLETDIR = ".gitlet";
+
     /** The path to the commits folder. */
     static final String COMMITSDIR = ".gitlet/Commits";
 
@@ -289,10 +569,22 @@ class Utils {
     /** The path to the branches folder. */
     static final String BRANCHESDIR = ".gitlet/Branches";
 
+    /** The path to the folder of pack files. */
+    static final String PACKSDIR = ".gitlet/Packs";
+
     /** The path to the Objects folder. */
     static final String OBJECTSDIR = ".gitlet/Objects";
 
-    /** The staging area associated with this repository. */
+    /** The staging area log associated with this repository. */
     static final String STGOBJ = ".gitlet/Objects/stgObj";
 
+    /** The path to the folder of the staging area's sorted runs. */
+    static final String STAGEDIR = ".gitlet/Objects/stage";
+
+    /** The repository object, which names the active branch. */
+    static final String REPOOBJ = ".gitlet/Objects/repoObj";
+
+    /** The path to the folder of the working trees' own files. */
+    static final String WORKTREESDIR = ".gitlet/Worktrees";
+
 }
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** A working tree of this repository. Every working tree shares the
+ *  objects, commit graph and branches of the first, and has its own
+ *  active branch and staging area (see RepoContext). The own files of a
+ *  working tree added later are kept in .gitlet/Worktrees/NAME, along
+ *  with a file holding the path of the working tree itself, so that the
+ *  working trees can find each other and no branch is checked out in two
+ *  of them at once.
+ *  @author Jack Mango */
+class Worktree {
+
+    /** A working tree whose top directory is TOP and whose files are
+     *  found through CONTEXT. */
+    private Worktree(File top, RepoContext context) {
+        _top = top;
+        _context = context;
+    }
+
+    /** Adds a working tree at PATH, which must not exist or be an empty
+     *  directory, with the branch BRANCHNAME checked out. */
+    static void add(String path, String branchName) {
+        File top = new File(path).getAbsoluteFile().toPath().normalize()
+            .toFile();
+        String[] present = top.list();
+        if (top.exists() && (present == null || present.length > 0)) {
+            throw error("%s already exists.", path);
+        }
+        String name = top.getName();
+        for (int i = 1; join(WORKTREESDIR, name).exists(); i += 1) {
+            name = top.getName() + i;
+        }
+        File stateDir = join(WORKTREESDIR, name);
+        RepoContext context = RepoContext.linked(top.toPath(),
+                Paths.get(""), stateDir.toPath());
+        context.file(REPOOBJ).getParentFile().mkdirs();
+        top.mkdirs();
+        writeContents(new File(stateDir, TOP), top.getPath() + "\n");
+        writeObject(context.file(REPOOBJ), new Repository(branchName));
+        Commit head = getCommit(Branch.read(branchName).getHead());
+        for (Map.Entry<String, ObjectId> entry : head.tree().entrySet()) {
+            File file = new File(top, entry.getKey());
+            file.getParentFile().mkdirs();
+            writeContents(file,
+                    getBlob(entry.getValue().toString()).getContents());
+        }
+        writeContents(new File(top, GITLETDIR),
+                RepoContext.link(stateDir.toPath()));
+    }
+
+    /** Returns every working tree of this repository, the first one
+     *  first and the rest in order of name. Working trees whose
+     *  directories have been deleted are left out. */
+    static List<Worktree> all() {
+        Path commonDir = RepoContext.current().commonDir();
+        Path first = commonDir.toAbsolutePath().normalize().getParent();
+        List<Worktree> result = new ArrayList<>();
+        result.add(new Worktree(first.toFile(),
+                RepoContext.open(first, Paths.get(""))));
+        File dir = join(WORKTREESDIR);
+        String[] names = dir.list();
+        if (names != null) {
+            Arrays.sort(names);
+            for (String name : names) {
+                File stateDir = new File(dir, name);
+                File top = new File(stateDir, TOP);
+                if (top.isFile()) {
+                    Path path = Paths.get(readContentsAsString(top).trim());
+                    Worktree tree = new Worktree(path.toFile(),
+                        RepoContext.linked(path, Paths.get(""),
+                                stateDir.toPath()));
+                    if (new File(tree._top, GITLETDIR).isFile()) {
+                        result.add(tree);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the working tree other than the current one that has
+     *  BRANCHNAME checked out, or null if there is none. */
+    static Worktree holding(String branchName) {
+        Path current = absolute(RepoContext.current().stateDir());
+        for (Worktree tree : all()) {
+            if (!absolute(tree._context.stateDir()).equals(current)
+                    && branchName.equals(tree.active())) {
+                return tree;
+            }
+        }
+        return null;
+    }
+
+    /** Returns PATH made absolute and normal. */
+    private static Path absolute(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /** Returns the name of the branch checked out in this working tree,
+     *  or null if it cannot be read. */
+    String active() {
+        File repo = _context.file(REPOOBJ);
+        return repo.isFile()
+            ? readObject(repo, Repository.class).activeName() : null;
+    }
+
+    /** Returns the top directory of this working tree. */
+    File top() {
+        return _top;
+    }
+
+    /** The name of the file in a working tree's own directory that holds
+     *  the path of its top directory. */
+    private static final String TOP = "path";
+
+    /** The top directory of this working tree. */
+    private final File _top;
+
+    /** Where the files of this working tree are found. */
+    private final RepoContext _context;
+
+}